@@ -0,0 +1,96 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.benchmark;
+
+import com.bazaarvoice.jless.LessProcessor;
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base for benchmarks that run one processing stage over each file of the test corpus. Run with `-prof gc` to
+ * report the allocation rate of each stage alongside its throughput.
+ *
+ * Stages that modify the tree need a new one for each invocation. Setup time is excluded from the results, but
+ * setup allocations are not, so those benchmarks include a baseline that only performs the setup.
+ *
+ * Files that use LESS features which are not supported yet (such as operations in `big.less`) fail to parse,
+ * so they are left out of the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class CorpusBenchmark {
+
+    private static final LessProcessor PROCESSOR = new LessProcessor();
+
+    @Param({
+            "comments", "comments-windows", "css", "css-3", "dash-prefix", "ie", "media", "mixins-args-minimal",
+            "nested", "nested-hybrid", "nested-windows", "redundant", "rulesets", "scope", "selectors", "strings",
+            "whitespace"
+    })
+    public String fileName;
+
+    private byte[] _input;
+
+    @Setup(Level.Trial)
+    public void loadInput() throws IOException {
+        InputStream stream = getClass().getResourceAsStream("/less/" + fileName + ".less");
+        if (stream == null) {
+            throw new IllegalArgumentException("Unable to read " + fileName + ".less");
+        }
+        try {
+            _input = IOUtils.toByteArray(stream);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * @return The size of the input file in bytes, which is its length in characters for the ASCII corpus files.
+     */
+    protected int getInputLength() {
+        return _input.length;
+    }
+
+    /**
+     * @return A newly parsed scope of the input file, without any translation steps applied.
+     */
+    protected ScopeNode parse() throws IOException {
+        return PROCESSOR.process(new ByteArrayInputStream(_input)).getScope();
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.benchmark;
+
+import com.bazaarvoice.jless.LessProcessor;
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import com.bazaarvoice.jless.ast.visitor.NestedMediaQueries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link NestedMediaQueries} translation step on a generated document with thousands of media
+ * queries nested in rule sets, spread over a varying number of rule sets. The step modifies the tree, so each
+ * invocation runs on a newly parsed scope.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratedMediaQueriesBenchmark {
+
+    private static final int MEDIA_QUERY_COUNT = 5000;
+
+    private static final LessProcessor PROCESSOR = new LessProcessor();
+
+    @Param({"10", "100", "5000"})
+    public int mediaQueriesPerRuleSet;
+
+    private byte[] _input;
+    private ScopeNode _scope;
+
+    @Setup(Level.Trial)
+    public void generateInput() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < MEDIA_QUERY_COUNT; i++) {
+            if (i % mediaQueriesPerRuleSet == 0) {
+                if (i > 0) {
+                    sb.append("}\n");
+                }
+                sb.append(".outer").append(i).append(", .other").append(i).append(" .inner {\n")
+                        .append("  color: red;\n");
+            }
+            sb.append("  @media screen and (max-width: ").append(i).append("px) {\n")
+                    .append("    margin: ").append(i).append("px;\n")
+                    .append("    .nested, .sibling:hover { padding: 0; }\n")
+                    .append("  }\n");
+        }
+        sb.append("}\n");
+        _input = sb.toString().getBytes();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareScope() throws IOException {
+        _scope = PROCESSOR.process(new ByteArrayInputStream(_input)).getScope();
+    }
+
+    /**
+     * Does no work besides the setup, so its allocation rate can be subtracted from that of the other benchmark.
+     */
+    @Benchmark
+    public ScopeNode baseline() {
+        return _scope;
+    }
+
+    @Benchmark
+    public ScopeNode nestedMediaQueries() {
+        _scope.traverse(new NestedMediaQueries());
+        return _scope;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.benchmark;
+
+import com.bazaarvoice.jless.LessProcessor;
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import com.bazaarvoice.jless.ast.util.NodeTreeUtils;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Param;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports the heap retained by the parsed tree of each file in the benchmark corpus. JMH only measures allocation,
+ * so this runs as a plain program instead:
+ *
+ *     java -cp benchmarks/target/benchmarks.jar com.bazaarvoice.jless.benchmark.HeapFootprint [copies]
+ *
+ * Each file is parsed a number of times and all of the trees are held at once, so the difference in used heap
+ * divided by the number of copies approximates the size of one tree.
+ */
+public class HeapFootprint {
+
+    private static final LessProcessor PROCESSOR = new LessProcessor();
+    private static final int DEFAULT_COPIES = 200;
+
+    public static void main(String[] args) throws Exception {
+        int copies = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_COPIES;
+        String[] fileNames = CorpusBenchmark.class.getField("fileName").getAnnotation(Param.class).value();
+
+        long totalBytes = 0;
+        int totalNodes = 0;
+
+        System.out.println(String.format("%-20s %8s %12s %10s", "File", "Nodes", "Bytes/tree", "Bytes/node"));
+        for (String fileName : fileNames) {
+            byte[] input = readInput(fileName);
+            ScopeNode[] scopes = new ScopeNode[copies];
+
+            // Parse once first, so that the parser pool and class loading are not measured
+            scopes[0] = parse(input);
+
+            long before = usedHeap();
+            for (int i = 0; i < copies; i++) {
+                scopes[i] = parse(input);
+            }
+            long after = usedHeap();
+
+            long bytes = (after - before) / copies;
+            int nodes = NodeTreeUtils.countNodes(scopes[0]);
+            totalBytes += bytes;
+            totalNodes += nodes;
+
+            System.out.println(String.format("%-20s %8d %12d %10d", fileName, nodes, bytes, bytes / nodes));
+        }
+        System.out.println(String.format("%-20s %8d %12d %10d", "Total", totalNodes, totalBytes, totalBytes / totalNodes));
+    }
+
+    private static ScopeNode parse(byte[] input) throws IOException {
+        return PROCESSOR.process(new ByteArrayInputStream(input)).getScope();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static byte[] readInput(String fileName) throws IOException {
+        InputStream stream = HeapFootprint.class.getResourceAsStream("/less/" + fileName + ".less");
+        if (stream == null) {
+            throw new IllegalArgumentException("Unable to read " + fileName + ".less");
+        }
+        try {
+            return IOUtils.toByteArray(stream);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+}
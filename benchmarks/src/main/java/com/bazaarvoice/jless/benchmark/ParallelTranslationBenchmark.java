@@ -0,0 +1,84 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.benchmark;
+
+import com.bazaarvoice.jless.LessProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sequential and parallel translation and printing of a large generated document with nested rule sets,
+ * mixins and variables. Each invocation translates a newly parsed result, so the parse is done in the setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelTranslationBenchmark {
+
+    private static final int RULE_SET_COUNT = 5000;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private LessProcessor _processor;
+    private byte[] _input;
+    private LessProcessor.Result _result;
+
+    @Setup(Level.Trial)
+    public void generateInput() {
+        _processor = new LessProcessor.Builder().setParallelTranslationEnabled(parallel).build();
+
+        StringBuilder sb = new StringBuilder("@color: red;\n.mixin(@width: 1px) { border: @width solid @color; }\n");
+        for (int i = 0; i < RULE_SET_COUNT; i++) {
+            sb.append(".rule").append(i).append(" {\n")
+                    .append("  color: @color;\n")
+                    .append("  .mixin(").append(i % 10).append("px);\n")
+                    .append("  .nested, :hover { margin: ").append(i).append("px; }\n")
+                    .append("}\n");
+        }
+        _input = sb.toString().getBytes();
+    }
+
+    @Setup(Level.Invocation)
+    public void parse() throws IOException {
+        _result = _processor.process(new ByteArrayInputStream(_input));
+    }
+
+    @Benchmark
+    public String translateAndPrint() {
+        return _result.toString();
+    }
+}
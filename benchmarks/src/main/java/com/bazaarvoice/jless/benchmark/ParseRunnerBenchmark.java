@@ -0,0 +1,94 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.benchmark;
+
+import com.bazaarvoice.jless.ast.node.Node;
+import com.bazaarvoice.jless.parser.DocumentParseRunner;
+import com.bazaarvoice.jless.parser.ParserPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.parboiled.Rule;
+import org.parboiled.parserunners.ParseRunner;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.DefaultValueStack;
+import org.parboiled.support.ParsingResult;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the parse runner used by the processor with Parboiled's reporting runner, on a generated document
+ * that is either valid or has a syntax error at its very end.
+ *
+ * Valid input takes a single basic run with either runner. Invalid input takes three runs (match, locate and
+ * report), and the processor's runner should not take longer than the reporting runner to describe the error.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseRunnerBenchmark {
+
+    private static final ParserPool PARSER_POOL = new ParserPool(true);
+    private static final int RULE_SET_COUNT = 2000;
+
+    @Param({"document", "reporting"})
+    public String runner;
+
+    @Param({"true", "false"})
+    public boolean valid;
+
+    private String _input;
+
+    @Setup(Level.Trial)
+    public void generateInput() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < RULE_SET_COUNT; i++) {
+            sb.append(".rule-").append(i).append(" {\n  color: red;\n  margin: ").append(i).append("px;\n}\n");
+        }
+        if (!valid) {
+            sb.append(".unclosed {\n");
+        }
+        _input = sb.toString();
+    }
+
+    @Benchmark
+    public ParsingResult<Node> parseDocument() {
+        Rule document = PARSER_POOL.acquire();
+        try {
+            ParseRunner<Node> parseRunner = runner.equals("document")
+                    ? new DocumentParseRunner<Node>(document, PARSER_POOL.getParser(document))
+                    : new ReportingParseRunner<Node>(document);
+            return parseRunner.withValueStack(new DefaultValueStack<Node>()).run(_input);
+        } finally {
+            PARSER_POOL.release(document);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.benchmark;
+
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import com.bazaarvoice.jless.ast.visitor.FlattenNestedRuleSets;
+import com.bazaarvoice.jless.ast.visitor.NestedMediaQueries;
+import com.bazaarvoice.jless.ast.visitor.Printer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.IOException;
+
+/**
+ * Measures printing a fully translated scope. Printing caches resolved variable values in the tree, so each
+ * invocation prints a newly translated scope.
+ */
+public class PrinterBenchmark extends CorpusBenchmark {
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    private ScopeNode _scope;
+
+    @Setup(Level.Invocation)
+    public void prepareScope() throws IOException {
+        _scope = parse();
+        _scope.traverse(new NestedMediaQueries());
+        _scope.traverse(new FlattenNestedRuleSets());
+    }
+
+    /**
+     * Does no work besides the setup, so its allocation rate can be subtracted from that of the other benchmark.
+     */
+    @Benchmark
+    public ScopeNode baseline() {
+        return _scope;
+    }
+
+    @Benchmark
+    public String print() {
+        Printer printer = new Printer(compress);
+        _scope.traverse(printer);
+        return printer.toString();
+    }
+
+    /**
+     * Prints the way processing results do, into a buffer that is sized for the input and recycled afterwards.
+     */
+    @Benchmark
+    public String printRecycled() {
+        Printer printer = new Printer(compress, getInputLength());
+        _scope.traverse(printer);
+        String output = printer.toString();
+        printer.recycle();
+        return output;
+    }
+}
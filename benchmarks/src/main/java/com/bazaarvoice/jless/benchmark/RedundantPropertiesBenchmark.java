@@ -0,0 +1,76 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.benchmark;
+
+import com.bazaarvoice.jless.LessProcessor;
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stress test for the elimination of redundant properties, which happens as each property is added to its scope.
+ * The input is a generated rule set with the given number of declarations that cycle through a small set of
+ * property names, so nearly every declaration hides an earlier one. The time per declaration should stay flat
+ * as the rule set grows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedundantPropertiesBenchmark {
+
+    private static final LessProcessor PROCESSOR = new LessProcessor();
+    private static final int PROPERTY_NAME_COUNT = 50;
+
+    @Param({"1000", "10000"})
+    public int declarationCount;
+
+    private byte[] _input;
+
+    @Setup(Level.Trial)
+    public void generateInput() {
+        StringBuilder sb = new StringBuilder(".generated {\n");
+        for (int i = 0; i < declarationCount; i++) {
+            sb.append("  property-").append(i % PROPERTY_NAME_COUNT).append(": ").append(i).append("px;\n");
+        }
+        sb.append("}\n");
+        _input = sb.toString().getBytes();
+    }
+
+    @Benchmark
+    public ScopeNode parseRuleSet() throws IOException {
+        return PROCESSOR.process(new ByteArrayInputStream(_input)).getScope();
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.benchmark;
+
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.IOException;
+
+/**
+ * Measures cloning a parsed scope. Every cloned child is added to its new parent again, so this exercises the
+ * child lookups of the addition visitors (such as indexing the selectors of each rule set) on every node.
+ * Cloning leaves the original untouched, so the scope is only parsed once per trial.
+ */
+public class ScopeCloneBenchmark extends CorpusBenchmark {
+
+    private ScopeNode _scope;
+
+    @Setup(Level.Trial)
+    public void prepareScope() throws IOException {
+        _scope = parse();
+    }
+
+    @Benchmark
+    public ScopeNode cloneScope() {
+        return _scope.clone();
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The command line tool. All inputs are compiled by one processor in a single JVM, in parallel.
+ *
+ * A single input file is written to standard output unless an output directory is given. Otherwise, each input
+ * file is written to the output directory with a ".css" extension, and LESS files found in an input directory keep
+ * their path relative to that directory. Nothing is compiled if two inputs would be written to the same output file.
+ * Every input is attempted even if some fail, and a timing summary is printed at the end.
+ */
+final class CommandLine {
+
+    private static final String USAGE =
+            "Usage: java -jar jless.jar [-c] [-m] [-t <thread count>] [-o <output directory>] <input file or directory>...\n" +
+            "  -c  Compress (minify) the output\n" +
+            "  -m  Optimize the output by merging equivalent rule sets and shortening values\n" +
+            "  -t  Number of files to compile at once (default: the number of processors)\n" +
+            "  -o  Directory to write a .css file to for each input";
+
+    private static final String INPUT_EXTENSION = ".less";
+    private static final String OUTPUT_EXTENSION = ".css";
+
+    private CommandLine() {}
+
+    /**
+     * @return The exit status: zero if every input was compiled, otherwise one.
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        LessProcessor.Builder builder = new LessProcessor.Builder();
+        File outputDirectory = null;
+        List<File> inputs = new ArrayList<File>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-c")) {
+                    builder.setCompressionEnabled(true);
+                } else if (arg.equals("-m")) {
+                    builder.setOptimizationEnabled(true);
+                } else if (arg.equals("-o")) {
+                    outputDirectory = new File(getValue(args, ++i, arg));
+                } else if (arg.equals("-t")) {
+                    builder.setThreadCount(getThreadCount(getValue(args, ++i, arg)));
+                } else if (arg.startsWith("-") && arg.length() > 1) {
+                    throw new IllegalArgumentException("Unknown option " + arg + ".");
+                } else {
+                    inputs.add(new File(arg));
+                }
+            }
+
+            if (inputs.isEmpty()) {
+                throw new IllegalArgumentException("You must specify an input file.");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 1;
+        }
+
+        LessProcessor processor = builder.build();
+
+        if (outputDirectory == null) {
+            if (inputs.size() > 1 || inputs.get(0).isDirectory()) {
+                err.println("An output directory (-o) is required for more than one input file.");
+                return 1;
+            }
+            return printToStream(processor, inputs.get(0), out, err);
+        }
+
+        Map<File, File> outputFiles = new LinkedHashMap<File, File>();
+        for (File input : inputs) {
+            if (input.isDirectory()) {
+                addDirectory(input, outputDirectory, outputFiles);
+            } else if (input.isFile()) {
+                outputFiles.put(input, new File(outputDirectory, getOutputName(input)));
+            } else {
+                err.println("Unable to find input file " + input + ".");
+                return 1;
+            }
+        }
+
+        if (!checkOutputFiles(outputFiles, err)) {
+            return 1;
+        }
+
+        return compileAll(processor, outputFiles, out, err);
+    }
+
+    private static String getValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("The option " + option + " requires a value.");
+        }
+        return args[index];
+    }
+
+    private static int getThreadCount(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The thread count must be a number.");
+        }
+    }
+
+    private static int printToStream(LessProcessor processor, File input, PrintStream out, PrintStream err) {
+        try {
+            PrintWriter writer = new PrintWriter(out);
+            processor.process(input).writeTo(writer);
+            writer.println();
+            writer.flush();
+            return 0;
+        } catch (IOException e) {
+            err.println("Unable to read input file.");
+            return 1;
+        }
+    }
+
+    private static void addDirectory(File directory, File outputDirectory, Map<File, File> outputFiles) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addDirectory(file, new File(outputDirectory, file.getName()), outputFiles);
+            } else if (file.getName().endsWith(INPUT_EXTENSION)) {
+                outputFiles.put(file, new File(outputDirectory, getOutputName(file)));
+            }
+        }
+    }
+
+    /**
+     * @return Whether each input has an output file of its own. Otherwise, the inputs that share one are reported.
+     */
+    private static boolean checkOutputFiles(Map<File, File> outputFiles, PrintStream err) {
+        Map<File, File> outputToInputMap = new HashMap<File, File>();
+        boolean unique = true;
+        for (Map.Entry<File, File> entry : outputFiles.entrySet()) {
+            File input = outputToInputMap.put(entry.getValue().getAbsoluteFile(), entry.getKey());
+            if (input != null) {
+                err.println("Both " + input + " and " + entry.getKey() + " would be written to " + entry.getValue() + ".");
+                unique = false;
+            }
+        }
+        return unique;
+    }
+
+    private static String getOutputName(File input) {
+        String name = input.getName();
+        if (name.endsWith(INPUT_EXTENSION)) {
+            name = name.substring(0, name.length() - INPUT_EXTENSION.length());
+        }
+        return name + OUTPUT_EXTENSION;
+    }
+
+    private static int compileAll(final LessProcessor processor, Map<File, File> outputFiles, PrintStream out, PrintStream err) {
+        if (outputFiles.isEmpty()) {
+            err.println("No input files were found.");
+            return 1;
+        }
+
+        long startTime = System.nanoTime();
+        int threadCount = Math.min(processor.getThreadCount(), outputFiles.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        List<Future<long[]>> futures = new ArrayList<Future<long[]>>(outputFiles.size());
+        try {
+            for (final Map.Entry<File, File> entry : outputFiles.entrySet()) {
+                futures.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws IOException {
+                        return compile(processor, entry.getKey(), entry.getValue());
+                    }
+                }));
+            }
+
+            int i = 0;
+            int failureCount = 0;
+            for (Map.Entry<File, File> entry : outputFiles.entrySet()) {
+                try {
+                    long[] times = getTimes(futures.get(i++));
+                    out.println(String.format("%8.1f ms (parse %.1f ms, translate and write %.1f ms)  %s -> %s",
+                            toMillis(times[0] + times[1]), toMillis(times[0]), toMillis(times[1]), entry.getKey(), entry.getValue()));
+                } catch (Exception e) {
+                    failureCount++;
+                    err.println("Unable to compile " + entry.getKey() + ": " + e.getMessage());
+                }
+            }
+
+            out.println(String.format("Compiled %d of %d files in %.1f ms using %d thread%s",
+                    outputFiles.size() - failureCount, outputFiles.size(), toMillis(System.nanoTime() - startTime),
+                    threadCount, (threadCount == 1) ? "" : "s"));
+            return (failureCount > 0) ? 1 : 0;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The time spent parsing the input, followed by the time spent translating and writing it.
+     */
+    private static long[] compile(LessProcessor processor, File input, File outputFile) throws IOException {
+        long startTime = System.nanoTime();
+        LessProcessor.Result result = processor.process(input);
+        long parseEndTime = System.nanoTime();
+
+        File parent = outputFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create the output directory " + parent + ".");
+        }
+
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(outputFile));
+        try {
+            result.writeTo(output);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+
+        return new long[] {parseEndTime - startTime, System.nanoTime() - parseEndTime};
+    }
+
+    private static long[] getTimes(Future<long[]> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for LESS input files to be compiled.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the {@link LessProcessor.Result}s of a processor, so that inputs which are processed repeatedly are only
+ * parsed once. A result's output is printed the first time it is requested and kept with the result, so cached
+ * results also avoid repeated translation and printing.
+ *
+ * Results are keyed by a hash of the input bytes, the input file's directory (if any), the processor's options and
+ * import paths, and the key of the parent result.
+ * Parents that were returned by this cache are identified by their own key, so a chain of identical inputs maps
+ * to the same entries. Any other parent is identified by its object identity.
+ * Files imported by an input are not part of the key, so the cache should be cleared when they change.
+ *
+ * The cache holds at most a fixed number of results and evicts the least recently used result when full.
+ * Concurrent misses on the same key may each process the input, in which case the last result to finish is kept.
+ */
+public class CompilationCache {
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final LessProcessor _processor;
+    private final int _maximumSize;
+    private final Map<String, LessProcessor.Result> _keyToResultMap;
+    private final Map<LessProcessor.Result, String> _resultToKeyMap = new WeakHashMap<LessProcessor.Result, String>();
+    private final AtomicLong _hitCount = new AtomicLong();
+    private final AtomicLong _missCount = new AtomicLong();
+    private long _foreignParentCount = 0;
+
+    public CompilationCache(LessProcessor processor, int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The cache must be able to hold at least one result.");
+        }
+
+        _processor = processor;
+        _maximumSize = maximumSize;
+        _keyToResultMap = new LinkedHashMap<String, LessProcessor.Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LessProcessor.Result> eldest) {
+                return size() > _maximumSize;
+            }
+        };
+    }
+
+    public LessProcessor getProcessor() {
+        return _processor;
+    }
+
+    public int getMaximumSize() {
+        return _maximumSize;
+    }
+
+    public LessProcessor.Result process(InputStream input) throws IOException {
+        return process(null, input);
+    }
+
+    /**
+     * @return The cached result for the given parent and input, or the result of processing them if none is cached.
+     * @see LessProcessor#process(LessProcessor.Result, InputStream)
+     */
+    public LessProcessor.Result process(LessProcessor.Result parent, InputStream input) throws IOException {
+        return process(parent, IOUtils.toByteArray(input), null);
+    }
+
+    public LessProcessor.Result process(File input) throws IOException {
+        return process(null, input);
+    }
+
+    /**
+     * Relative imports are resolved against the file's directory first, as they are by the processor.
+     * @see LessProcessor#process(LessProcessor.Result, File)
+     */
+    public LessProcessor.Result process(LessProcessor.Result parent, File input) throws IOException {
+        return process(parent, FileUtils.readFileToByteArray(input), input.getAbsoluteFile().getParentFile());
+    }
+
+    private LessProcessor.Result process(LessProcessor.Result parent, byte[] inputBytes, File directory)
+            throws IOException {
+        String key = getKey(parent, inputBytes, directory);
+
+        LessProcessor.Result result;
+        synchronized (this) {
+            result = _keyToResultMap.get(key);
+        }
+
+        if (result != null) {
+            _hitCount.incrementAndGet();
+            return result;
+        }
+
+        _missCount.incrementAndGet();
+        result = _processor.process(parent, new ByteArrayInputStream(inputBytes), directory);
+
+        synchronized (this) {
+            _keyToResultMap.put(key, result);
+            _resultToKeyMap.put(result, key);
+        }
+
+        return result;
+    }
+
+    public long getHitCount() {
+        return _hitCount.get();
+    }
+
+    public long getMissCount() {
+        return _missCount.get();
+    }
+
+    public synchronized int size() {
+        return _keyToResultMap.size();
+    }
+
+    /**
+     * Removes all cached results. The hit and miss counts are preserved.
+     */
+    public synchronized void clear() {
+        _keyToResultMap.clear();
+    }
+
+    private String getKey(LessProcessor.Result parent, byte[] inputBytes, File directory) throws IOException {
+        MessageDigest digest = createDigest();
+        if (parent != null) {
+            digest.update(getParentKey(parent).getBytes());
+        }
+        digest.update((byte) ((_processor.isTranslationEnabled() ? 1 : 0) | (_processor.isCompressionEnabled() ? 2 : 0)
+                | (_processor.isOptimizationEnabled() ? 4 : 0)));
+        updateImportDirectories(digest, directory, _processor.getImportPaths());
+        digest.update(inputBytes);
+
+        return toHex(digest.digest());
+    }
+
+    private synchronized String getParentKey(LessProcessor.Result parent) {
+        String key = _resultToKeyMap.get(parent);
+        if (key == null) {
+            // Results from elsewhere can't be compared by content, so give each one a key of its own
+            key = "parent-" + _foreignParentCount++;
+            _resultToKeyMap.put(parent, key);
+        }
+        return key;
+    }
+
+    /**
+     * @return A new digest of the algorithm that input keys are built with.
+     */
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The " + DIGEST_ALGORITHM + " digest algorithm is not available.", e);
+        }
+    }
+
+    /**
+     * Adds the directories that relative imports are resolved against to the given digest, since the same input
+     * may import different files from each of them.
+     * @param directory The input's own directory, or null if it is unknown.
+     */
+    static void updateImportDirectories(MessageDigest digest, File directory, List<File> importPaths)
+            throws IOException {
+        if (directory != null) {
+            digest.update(directory.getCanonicalPath().getBytes("UTF-8"));
+        }
+        digest.update((byte) 0);
+        for (File importPath : importPaths) {
+            digest.update(importPath.getCanonicalPath().getBytes("UTF-8"));
+            digest.update((byte) 0);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
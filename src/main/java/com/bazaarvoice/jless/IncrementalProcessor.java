@@ -0,0 +1,187 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the results of a set of related input files, so that a watching process (such as a development server)
+ * only needs to redo the work affected by a changed file. Each file may be processed with the result of another
+ * file as its parent, and that file's result is reused until it changes.
+ *
+ * Mixins are copied into a file's tree while it is parsed, so a change to a file also requires each of its
+ * dependents (the files using it as a parent, directly or indirectly) to be parsed again. Unrelated files and
+ * the file's own parents are left alone. The files that a file imports are checked by {@link #refresh} along
+ * with the file itself.
+ *
+ * A file's output is printed from a copy of its parsed tree, since translation modifies the tree and
+ * dependents must be parsed against the untranslated tree.
+ */
+public class IncrementalProcessor {
+
+    private final LessProcessor _processor;
+    private final Map<File, Entry> _entries = new HashMap<File, Entry>();
+
+    public IncrementalProcessor(LessProcessor processor) {
+        _processor = processor;
+    }
+
+    public LessProcessor getProcessor() {
+        return _processor;
+    }
+
+    public synchronized void addFile(File file) {
+        addFile(file, null);
+    }
+
+    /**
+     * Registers a file to be processed with the result of the given parent file, which must already be registered.
+     */
+    public synchronized void addFile(File file, File parent) {
+        if (_entries.containsKey(file)) {
+            throw new IllegalArgumentException("The file " + file + " has already been added.");
+        }
+
+        Entry parentEntry = null;
+        if (parent != null) {
+            parentEntry = getEntry(parent);
+        }
+
+        Entry entry = new Entry(file, parentEntry);
+        if (parentEntry != null) {
+            parentEntry._dependents.add(entry);
+        }
+        _entries.put(file, entry);
+    }
+
+    /**
+     * Discards the results of the given file and all of its dependents, so they are processed again when next
+     * requested.
+     * @return The files whose results were discarded.
+     */
+    public synchronized Set<File> invalidate(File file) {
+        Set<File> invalidated = new LinkedHashSet<File>();
+        invalidate(getEntry(file), invalidated);
+        return invalidated;
+    }
+
+    /**
+     * Checks the modification time of each file, and invalidates those that have changed since they were read.
+     * @return The files whose results were discarded.
+     */
+    public synchronized Set<File> refresh() {
+        Set<File> invalidated = new LinkedHashSet<File>();
+        for (Entry entry : _entries.values()) {
+            if (entry._parsed != null && (entry._file.lastModified() != entry._lastModified || isImportModified(entry))) {
+                invalidate(entry, invalidated);
+            }
+        }
+        return invalidated;
+    }
+
+    /**
+     * @return The result of the given file, processing it and any of its parents as needed.
+     */
+    public synchronized LessProcessor.Result getResult(File file) throws IOException {
+        Entry entry = getEntry(file);
+
+        if (entry._printable == null) {
+            LessProcessor.Result parsed = parse(entry);
+            entry._printable = _processor.createResult(null, parsed.getScope().clone());
+        }
+
+        return entry._printable;
+    }
+
+    private LessProcessor.Result parse(Entry entry) throws IOException {
+        if (entry._parsed != null) {
+            return entry._parsed;
+        }
+
+        LessProcessor.Result parent = null;
+        if (entry._parent != null) {
+            parent = parse(entry._parent);
+        }
+
+        // Record the time before reading, so that a change made while reading is caught by the next refresh
+        long lastModified = entry._file.lastModified();
+
+        entry._parsed = _processor.process(parent, entry._file);
+
+        entry._lastModified = lastModified;
+        // The imported files are only known once the file has been parsed
+        entry._importModificationTimes.clear();
+        for (File importedFile : entry._parsed.getImportedFiles()) {
+            entry._importModificationTimes.put(importedFile, importedFile.lastModified());
+        }
+        return entry._parsed;
+    }
+
+    private static boolean isImportModified(Entry entry) {
+        for (Map.Entry<File, Long> modificationTime : entry._importModificationTimes.entrySet()) {
+            if (modificationTime.getKey().lastModified() != modificationTime.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void invalidate(Entry entry, Set<File> invalidated) {
+        if (!invalidated.add(entry._file)) {
+            return;
+        }
+
+        entry._parsed = null;
+        entry._printable = null;
+
+        for (Entry dependent : entry._dependents) {
+            invalidate(dependent, invalidated);
+        }
+    }
+
+    private Entry getEntry(File file) {
+        Entry entry = _entries.get(file);
+        if (entry == null) {
+            throw new IllegalArgumentException("The file " + file + " has not been added.");
+        }
+        return entry;
+    }
+
+    private static class Entry {
+        private final File _file;
+        private final Entry _parent;
+        private final List<Entry> _dependents = new ArrayList<Entry>();
+        private final Map<File, Long> _importModificationTimes = new HashMap<File, Long>();
+        private long _lastModified;
+        private LessProcessor.Result _parsed;
+        private LessProcessor.Result _printable;
+
+        private Entry(File file, Entry parent) {
+            _file = file;
+            _parent = parent;
+        }
+    }
+}
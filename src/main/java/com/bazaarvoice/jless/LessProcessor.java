@@ -20,25 +20,48 @@ package com.bazaarvoice.jless;
 
 import com.bazaarvoice.jless.ast.node.Node;
 import com.bazaarvoice.jless.ast.node.ScopeNode;
+import com.bazaarvoice.jless.ast.util.NodeTreeUtils;
 import com.bazaarvoice.jless.ast.visitor.FlattenNestedRuleSets;
 import com.bazaarvoice.jless.ast.visitor.NestedMediaQueries;
+import com.bazaarvoice.jless.ast.visitor.OptimizeRuleSets;
 import com.bazaarvoice.jless.ast.visitor.Printer;
 import com.bazaarvoice.jless.exception.LessTranslationException;
+import com.bazaarvoice.jless.parser.DocumentParseRunner;
+import com.bazaarvoice.jless.parser.ImportCache;
+import com.bazaarvoice.jless.parser.ImportContext;
+import com.bazaarvoice.jless.parser.InputBuffers;
 import com.bazaarvoice.jless.parser.Parser;
-import com.google.common.base.Supplier;
-import com.google.common.base.Suppliers;
-import org.apache.commons.io.IOUtils;
-import org.parboiled.Parboiled;
+import com.bazaarvoice.jless.parser.ParserPool;
+import com.bazaarvoice.jless.parser.SymbolTable;
+import org.parboiled.Rule;
 import org.parboiled.errors.ErrorUtils;
 import org.parboiled.parserunners.ParseRunner;
-import org.parboiled.parserunners.ReportingParseRunner;
 import org.parboiled.support.DefaultValueStack;
 import org.parboiled.support.ParsingResult;
 import org.parboiled.support.ValueStack;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * LessProcessor is JLESS's parsing and translation engine that is used to convert input files that
@@ -51,51 +74,111 @@ import java.io.InputStream;
  *   <li>Mixins</li>
  *   <li>Mixin Arguments</li>
  *   <li>Nesting</li>
+ *   <li>Imports</li>
  * </ul>
  *
  * The following LESS features are not currently supported:
  * <ul>
  *   <li>Operations</li>
  *   <li>Accessors</li>
- *   <li>Imports</li>
  * </ul>
  *
  * This implementation does not attempt to generate the same output as the Ruby version.
  * Translation differences from LESS Ruby include:
  * <ul>
- *   <li>Equivalent adjacent rule sets are not grouped</li>
- *   <li>Empty rule sets are preserved</li>
- *   <li>Numbers and colors are not reformatted</li>
+ *   <li>Equivalent adjacent rule sets are not grouped, unless optimization is enabled</li>
+ *   <li>Empty rule sets are preserved, unless optimization is enabled</li>
+ *   <li>Numbers and colors are not reformatted, except for the zero lengths and colors that optimization shortens</li>
+ *   <li>Imported files can't reference variables or mixins of the files that import them</li>
  * </ul>
  *
  * This list only notes changes in the <em>translation</em> stage. See {@link com.bazaarvoice.jless.parser.Parser} for details
  * on any changes to the <em>parsing</em> stage.
  *
+ * A processor's options are fixed when it is built by a {@link Builder}, so a single processor may be shared
+ * between threads. Each {@link Result} keeps the options that were in effect when its input was parsed.
+ *
  * @see com.bazaarvoice.jless.parser.Parser
  */
 public class LessProcessor {
 
+    // Built parser rule trees are shared by all processors, one pool per translation mode.
+    private static final ParserPool TRANSLATING_PARSER_POOL = new ParserPool(true);
+    private static final ParserPool PARSING_PARSER_POOL = new ParserPool(false);
+
     // Controls whether only parsing or both parsing and translation are performed.
-    private boolean _translationEnabled = true;
+    private final boolean _translationEnabled;
 
     // Controls whether a compressed version of the output is printed.
     // There is no performance penalty for enabling compression.
-    private boolean _compressionEnabled = false;
+    private final boolean _compressionEnabled;
 
-    public boolean isTranslationEnabled() {
-        return _translationEnabled;
+    // Controls whether rule sets are merged and values shortened after translation.
+    private final boolean _optimizationEnabled;
+
+    // Limits the number of files processed at once by processAll(), and the number of threads used by parallel translation.
+    private final int _threadCount;
+
+    // Controls whether the top-level nodes of each result are translated and printed in parallel.
+    private final boolean _parallelTranslationEnabled;
+
+    // Receives timings and counts for each input, if set.
+    private final MetricsListener _metricsListener;
+
+    // Directories searched for imported files, after the directory of the importing file.
+    private final List<File> _importPaths;
+
+    // Holds the parsed scope of each imported file.
+    private final ImportCache _importCache;
+
+    // Runs the parts of all parallel translations. Created when first needed.
+    private ExecutorService _translationExecutor;
+
+    public LessProcessor() {
+        this(new Builder());
+    }
+
+    private LessProcessor(Builder builder) {
+        _translationEnabled = builder._translationEnabled;
+        _compressionEnabled = builder._compressionEnabled;
+        _optimizationEnabled = builder._optimizationEnabled;
+        _threadCount = builder._threadCount;
+        _parallelTranslationEnabled = builder._parallelTranslationEnabled;
+        _metricsListener = builder._metricsListener;
+        _importPaths = Collections.unmodifiableList(new ArrayList<File>(builder._importPaths));
+        _importCache = new ImportCache(getParserPool(), _importPaths);
     }
 
-    public void setTranslationEnabled(boolean translationEnabled) {
-        _translationEnabled = translationEnabled;
+    public boolean isTranslationEnabled() {
+        return _translationEnabled;
     }
 
     public boolean isCompressionEnabled() {
         return _compressionEnabled;
     }
 
-    public void setCompressionEnabled(boolean compressionEnabled) {
-        _compressionEnabled = compressionEnabled;
+    public boolean isOptimizationEnabled() {
+        return _optimizationEnabled;
+    }
+
+    public int getThreadCount() {
+        return _threadCount;
+    }
+
+    public boolean isParallelTranslationEnabled() {
+        return _parallelTranslationEnabled;
+    }
+
+    public MetricsListener getMetricsListener() {
+        return _metricsListener;
+    }
+
+    public List<File> getImportPaths() {
+        return _importPaths;
+    }
+
+    private ParserPool getParserPool() {
+        return _translationEnabled ? TRANSLATING_PARSER_POOL : PARSING_PARSER_POOL;
     }
 
     public Result process(InputStream input) throws IOException {
@@ -103,23 +186,53 @@ public class LessProcessor {
     }
 
     /**
-     * The {@link ScopeNode} from a parent's result is placed on the parser's {@link ValueStack} and joined
-     * together to allow for variable and mixin resolution across scopes.
+     * The variables and mixins of the parent result (and of its own parents) are visible to the input. The new
+     * scope is linked to the parent's scope to allow for variable resolution across scopes when printing.
      * @return A printable {@link Result} of processing the given input.
      */
     public Result process(Result parent, InputStream input) throws IOException {
-        ValueStack<Node> stack = new DefaultValueStack<Node>();
+        return process(parent, input, null);
+    }
 
-        // Make the scope of each parent result accessible for variable and mixin resolution during parsing
-        ScopeNode parentScope = null;
-        if (parent != null) {
-            parentScope = parent.getScope();
-            stack.push(parentScope);
-        }
+    /**
+     * @param directory The directory that the input's relative imports are resolved against, if known.
+     */
+    Result process(Result parent, InputStream input, File directory) throws IOException {
+        long decodeStartTime = timestamp(_metricsListener);
+        return process(parent, InputBuffers.read(input), directory, decodeStartTime);
+    }
+
+    private Result process(Result parent, InputBuffers.Buffer input, File directory, long decodeStartTime) {
+        ValueStack<Node> stack = new DefaultValueStack<Node>();
 
         // Parse the input
-        ParseRunner<Node> parseRunner = new ReportingParseRunner<Node>(Parboiled.createParser(Parser.class, _translationEnabled).Document()).withValueStack(stack);
-        ParsingResult<Node> result = parseRunner.run(IOUtils.toString(input, "UTF-8"));
+        long parseStartTime = timestamp(_metricsListener);
+        ParserPool parserPool = getParserPool();
+        Rule document = parserPool.acquire();
+        Parser parser = parserPool.getParser(document);
+        ParsingResult<Node> result = null;
+        ImportContext importContext;
+        long parseEndTime;
+        int mixinExpansionCount;
+        try {
+            parser.setImportContext(_importCache.createContext(directory));
+            // Make the scopes of the parent results accessible for variable and mixin resolution during parsing
+            parser.setParentSymbolTable(parent != null ? parent.getSymbolTable() : null);
+            ParseRunner<Node> parseRunner = new DocumentParseRunner<Node>(document, parser).withValueStack(stack);
+            result = parseRunner.run(input);
+            parseEndTime = timestamp(_metricsListener);
+            mixinExpansionCount = parser.getMixinExpansionCount();
+            // The runner replaces the context if it parses the input again
+            importContext = parser.getImportContext();
+        } finally {
+            parser.setImportContext(null);
+            parser.setParentSymbolTable(null);
+            if (result != null) {
+                parserPool.release(document);
+            } else {
+                parserPool.discard(document);
+            }
+        }
 
         if (result.hasErrors()) {
             throw new LessTranslationException("An error occurred while parsing a LESS input file:\n" +
@@ -128,73 +241,380 @@ public class LessProcessor {
 
         // Retrieve the processed result
         ScopeNode scope = (ScopeNode) stack.pop();
+        Result processed = createResult(parent, scope, input.getLength(), importContext.getImportedFiles());
 
-        // Link the new scope to the last parent for later variable resolution
-        if (parentScope != null) {
-            scope.setParentScope(parentScope);
+        if (_metricsListener != null) {
+            _metricsListener.phaseCompleted(processed, MetricsListener.Phase.DECODE, parseStartTime - decodeStartTime);
+            _metricsListener.phaseCompleted(processed, MetricsListener.Phase.PARSE, parseEndTime - parseStartTime);
+            _metricsListener.countRecorded(processed, MetricsListener.Count.NODES_CREATED, NodeTreeUtils.countNodes(scope));
+            _metricsListener.countRecorded(processed, MetricsListener.Count.MIXINS_EXPANDED, mixinExpansionCount);
         }
 
-        return new Result(scope);
+        return processed;
     }
 
-    public static void main(String[] args) {
-        if (args.length == 0) {
-            System.err.println("You must specify an input file.");
-            System.exit(1);
+    /**
+     * Wraps a parsed scope in a result that uses this processor's options. The scope is linked to the scope of the
+     * last parent for later variable resolution.
+     */
+    Result createResult(Result parent, ScopeNode scope) {
+        return createResult(parent, scope, 0, Collections.<File>emptySet());
+    }
+
+    /**
+     * @param inputLength The length of the parsed input, which the output is expected to be close to, or zero if
+     * it is unknown.
+     * @param importedFiles The files that the input imported while it was parsed.
+     */
+    Result createResult(Result parent, ScopeNode scope, int inputLength, Set<File> importedFiles) {
+        if (parent != null) {
+            scope.setParentScope(parent.getScope());
         }
 
-        LessProcessor translator = new LessProcessor();
-        String inputPath = null;
+        return new Result(scope, _translationEnabled, _compressionEnabled, _optimizationEnabled,
+                _parallelTranslationEnabled ? this : null, _metricsListener, inputLength, importedFiles);
+    }
+
+    /**
+     * @return The executor that runs the parts of parallel translations for all results of this processor. Its
+     * threads are daemon threads that end when they have been idle for a while, so an unused processor doesn't
+     * keep any threads alive.
+     */
+    synchronized ExecutorService getTranslationExecutor() {
+        if (_translationExecutor == null) {
+            final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(_threadCount, _threadCount, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = defaultFactory.newThread(runnable);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            _translationExecutor = executor;
+        }
+        return _translationExecutor;
+    }
 
-        for (String arg : args) {
-            if (arg.equals("-c")) {
-                translator.setCompressionEnabled(true);
-            } else {
-                if (inputPath != null) {
-                    System.err.println("Only one input file can be used.");
-                    System.exit(1);
-                }
-                inputPath = arg;
+    /**
+     * @return The current time for measuring a phase, or zero if nobody is listening for measurements.
+     */
+    static long timestamp(MetricsListener listener) {
+        return (listener != null) ? System.nanoTime() : 0;
+    }
+
+    public Result process(File input) throws IOException {
+        return process(null, input);
+    }
+
+    /**
+     * Reads the input file by memory mapping it and decoding it directly into the parser's input buffer.
+     * Relative imports are resolved against the file's directory first.
+     * @see #process(Result, InputStream)
+     */
+    public Result process(Result parent, File input) throws IOException {
+        long decodeStartTime = timestamp(_metricsListener);
+        return process(parent, InputBuffers.read(input), input.getAbsoluteFile().getParentFile(), decodeStartTime);
+    }
+
+    /**
+     * Processes a set of independent input files in parallel, using at most {@link #getThreadCount} threads.
+     * Each result is fully translated and printed before this method returns.
+     * @return The result for each input file, in the iteration order of the given collection.
+     */
+    public Map<File, Result> processAll(Collection<File> inputs) throws IOException {
+        Map<File, Result> results = new LinkedHashMap<File, Result>();
+        if (inputs.isEmpty()) {
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(_threadCount, inputs.size()));
+
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>(inputs.size());
+            for (final File input : inputs) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws IOException {
+                        Result result = process(input);
+                        // Perform translation and printing on this thread as well
+                        result.toString();
+                        return result;
+                    }
+                }));
             }
+
+            int i = 0;
+            for (File input : inputs) {
+                results.put(input, getResult(futures.get(i++)));
+            }
+        } finally {
+            executor.shutdownNow();
         }
 
+        return results;
+    }
+
+    private static Result getResult(Future<Result> future) throws IOException {
         try {
-            System.out.println(translator.process(new FileInputStream(inputPath)));
-        } catch (IOException e) {
-            System.err.println("Unable to read input file.");
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for LESS input files to be processed.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Runs the command line tool. See {@link CommandLine} for its options.
+     */
+    public static void main(String[] args) {
+        int status = CommandLine.run(args, System.out, System.err);
+        if (status != 0) {
+            System.exit(status);
         }
     }
-    
-    public class Result {
+
+    /**
+     * Collects the options for a new {@link LessProcessor}.
+     */
+    public static class Builder {
+        private boolean _translationEnabled = true;
+        private boolean _compressionEnabled = false;
+        private boolean _optimizationEnabled = false;
+        private int _threadCount = Runtime.getRuntime().availableProcessors();
+        private boolean _parallelTranslationEnabled = false;
+        private MetricsListener _metricsListener = null;
+        private List<File> _importPaths = new ArrayList<File>();
+
+        public Builder setTranslationEnabled(boolean translationEnabled) {
+            _translationEnabled = translationEnabled;
+            return this;
+        }
+
+        public Builder setCompressionEnabled(boolean compressionEnabled) {
+            _compressionEnabled = compressionEnabled;
+            return this;
+        }
+
+        /**
+         * Enables an additional translation step that makes the output smaller: empty rule sets are removed,
+         * adjacent rule sets with the same declarations are merged, and colors and zero lengths are shortened.
+         * This step needs the whole document, so results are not translated in parallel while it is enabled.
+         * @see OptimizeRuleSets
+         */
+        public Builder setOptimizationEnabled(boolean optimizationEnabled) {
+            _optimizationEnabled = optimizationEnabled;
+            return this;
+        }
+
+        public Builder setThreadCount(int threadCount) {
+            if (threadCount < 1) {
+                throw new IllegalArgumentException("At least one thread is required.");
+            }
+            _threadCount = threadCount;
+            return this;
+        }
+
+        /**
+         * Enables translating and printing the top-level nodes of each result on up to the configured number of
+         * threads. The output is the same as with sequential translation. This is intended for large inputs that
+         * are processed one at a time; processAll() already processes separate inputs in parallel.
+         */
+        public Builder setParallelTranslationEnabled(boolean parallelTranslationEnabled) {
+            _parallelTranslationEnabled = parallelTranslationEnabled;
+            return this;
+        }
+
+        /**
+         * Registers a listener for the timings and counts of each processed input. By default, nothing is measured.
+         */
+        public Builder setMetricsListener(MetricsListener metricsListener) {
+            _metricsListener = metricsListener;
+            return this;
+        }
+
+        /**
+         * Adds a directory to search for imported files. Directories are searched in the order they were added,
+         * after the directory of the importing file.
+         */
+        public Builder addImportPath(File directory) {
+            _importPaths.add(directory);
+            return this;
+        }
+
+        public LessProcessor build() {
+            return new LessProcessor(this);
+        }
+    }
+
+    /**
+     * Holds the parsed scope of an input file. Translation and printing are deferred until the output is first
+     * requested through {@link #toString} or {@link #writeTo}. The translation steps modify the scope, so they are
+     * only performed once, and access to the output is serialized.
+     */
+    public static class Result {
         private final ScopeNode _scope;
-        private final Supplier<String> _toStringSupplier;
+        private final boolean _translationEnabled;
+        private final boolean _compressionEnabled;
+        private final boolean _optimizationEnabled;
+        private final LessProcessor _parallelProcessor;
+        private final MetricsListener _metricsListener;
+        private final int _inputLength;
+        private final Set<File> _importedFiles;
+        private boolean _translated = false;
+        private String _output;
+        private SymbolTable _symbolTable;
 
-        public Result(ScopeNode scope) {
-            _scope = scope;
-            _toStringSupplier = Suppliers.memoize(new Supplier<String>() {
-                @Override
-                public String get() {
-                    // Perform additional translation steps if needed
-                    if (_translationEnabled) {
-                        _scope.traverse(new NestedMediaQueries());
-                        _scope.traverse(new FlattenNestedRuleSets());
-                    }
+        public Result(ScopeNode scope, boolean translationEnabled, boolean compressionEnabled) {
+            this(scope, translationEnabled, compressionEnabled, false, null, null, 0, Collections.<File>emptySet());
+        }
 
-                    // Print the output nodes
-                    Printer printer = new Printer(_compressionEnabled);
-                    _scope.traverse(printer);
-                    return printer.toString();
-                }
-            });
+        private Result(ScopeNode scope, boolean translationEnabled, boolean compressionEnabled, boolean optimizationEnabled,
+                       LessProcessor parallelProcessor, MetricsListener metricsListener, int inputLength,
+                       Set<File> importedFiles) {
+            _scope = scope;
+            _translationEnabled = translationEnabled;
+            _compressionEnabled = compressionEnabled;
+            _optimizationEnabled = optimizationEnabled;
+            _parallelProcessor = parallelProcessor;
+            _metricsListener = metricsListener;
+            _inputLength = inputLength;
+            _importedFiles = Collections.unmodifiableSet(importedFiles);
         }
 
         public ScopeNode getScope() {
             return _scope;
         }
 
+        /**
+         * @return The canonical files that the input imported, directly or through other imported files.
+         */
+        public Set<File> getImportedFiles() {
+            return _importedFiles;
+        }
+
+        public boolean isTranslationEnabled() {
+            return _translationEnabled;
+        }
+
+        /**
+         * @return The variables and mixins visible from this result's scope, for use by child results. This is
+         * built when first needed and then shared by all children.
+         */
+        synchronized SymbolTable getSymbolTable() {
+            if (_symbolTable == null) {
+                _symbolTable = new SymbolTable(_scope);
+            }
+            return _symbolTable;
+        }
+
+        public boolean isCompressionEnabled() {
+            return _compressionEnabled;
+        }
+
+        public boolean isOptimizationEnabled() {
+            return _optimizationEnabled;
+        }
+
+        /**
+         * Streams the output to the given writer without keeping a complete copy of it in memory.
+         * The writer is flushed, but not closed.
+         */
+        public synchronized void writeTo(Writer writer) throws IOException {
+            if (_output != null) {
+                writer.write(_output);
+                writer.flush();
+                return;
+            }
+
+            Printer printer = translateAndPrint(new Printer(_compressionEnabled, writer));
+            printer.flush();
+            printer.recycle();
+        }
+
+        /**
+         * Streams the output to the given stream using UTF-8 encoding. The stream is flushed, but not closed.
+         */
+        public void writeTo(OutputStream output) throws IOException {
+            writeTo(new OutputStreamWriter(output, "UTF-8"));
+        }
+
+        private Printer translateAndPrint(Printer printer) {
+            if (!_translated && _translationEnabled && !_optimizationEnabled && _parallelProcessor != null
+                    && _parallelProcessor.getThreadCount() > 1) {
+                _translated = true;
+                return new ParallelTranslator(this, _parallelProcessor.getThreadCount(),
+                        _parallelProcessor.getTranslationExecutor(), _metricsListener).translate(printer);
+            }
+
+            translate();
+            return print(printer);
+        }
+
+        private void translate() {
+            if (_translated) {
+                return;
+            }
+
+            // Perform additional translation steps if needed
+            if (_translationEnabled) {
+                long startTime = timestamp(_metricsListener);
+                _scope.traverse(new NestedMediaQueries());
+                long flattenStartTime = timestamp(_metricsListener);
+                _scope.traverse(new FlattenNestedRuleSets());
+                long optimizeStartTime = timestamp(_metricsListener);
+
+                if (_optimizationEnabled) {
+                    _scope.traverse(new OptimizeRuleSets(_compressionEnabled));
+                }
+
+                if (_metricsListener != null) {
+                    _metricsListener.phaseCompleted(this, MetricsListener.Phase.NESTED_MEDIA_QUERIES, flattenStartTime - startTime);
+                    _metricsListener.phaseCompleted(this, MetricsListener.Phase.FLATTEN_NESTED_RULE_SETS, optimizeStartTime - flattenStartTime);
+                    if (_optimizationEnabled) {
+                        _metricsListener.phaseCompleted(this, MetricsListener.Phase.OPTIMIZE, timestamp(_metricsListener) - optimizeStartTime);
+                    }
+                }
+            }
+
+            _translated = true;
+        }
+
+        private Printer print(Printer printer) {
+            long startTime = timestamp(_metricsListener);
+            _scope.traverse(printer);
+
+            if (_metricsListener != null) {
+                _metricsListener.phaseCompleted(this, MetricsListener.Phase.PRINT, timestamp(_metricsListener) - startTime);
+                _metricsListener.countRecorded(this, MetricsListener.Count.VARIABLES_RESOLVED, printer.getResolvedReferenceCount());
+            }
+
+            return printer;
+        }
+
         @Override
-        public String toString() {
-            return _toStringSupplier.get();
+        public synchronized String toString() {
+            if (_output == null) {
+                Printer printer = translateAndPrint(new Printer(_compressionEnabled, _inputLength));
+                _output = printer.toString();
+                printer.recycle();
+            }
+
+            return _output;
         }
     }
 }
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+
+package com.bazaarvoice.jless;
+
+/**
+ * Receives timings and counts for each input handled by a {@link LessProcessor} that was built with this listener.
+ * The decoding and parsing phases are reported when the input is processed, while the translation and printing
+ * phases are reported when the result's output is first requested, which may happen on a different thread.
+ *
+ * No measurements are taken for processors without a listener.
+ */
+public interface MetricsListener {
+
+    enum Phase {
+        /** Reading and decoding the input text */
+        DECODE,
+        /** Parsing, which also includes mixin expansion */
+        PARSE,
+        /** Moving nested media queries to the top level of the tree */
+        NESTED_MEDIA_QUERIES,
+        /** Flattening nested rule sets */
+        FLATTEN_NESTED_RULE_SETS,
+        /** Merging rule sets and shortening values, if optimization is enabled */
+        OPTIMIZE,
+        /** Printing the output */
+        PRINT
+    }
+
+    enum Count {
+        /** The number of nodes in the parsed tree, including the contents of expanded mixins */
+        NODES_CREATED,
+        /** The number of mixin references that were expanded while parsing */
+        MIXINS_EXPANDED,
+        /** The number of variable references that were resolved while printing */
+        VARIABLES_RESOLVED
+    }
+
+    void phaseCompleted(LessProcessor.Result result, Phase phase, long elapsedNanos);
+
+    void countRecorded(LessProcessor.Result result, Count count, int value);
+}
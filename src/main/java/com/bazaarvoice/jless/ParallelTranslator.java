@@ -0,0 +1,179 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import com.bazaarvoice.jless.ast.visitor.FlattenNestedRuleSets;
+import com.bazaarvoice.jless.ast.visitor.InclusiveNodeVisitor;
+import com.bazaarvoice.jless.ast.visitor.NestedMediaQueries;
+import com.bazaarvoice.jless.ast.visitor.Printer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Translates and prints the top-level nodes of a document in parallel. Once nested media queries have been moved
+ * to the top level, each top-level node can be flattened and printed without affecting any other. The top-level
+ * nodes are split into consecutive parts that are each flattened and printed by a separate task, and the printed
+ * parts are appended in order, which gives the same output as the sequential translation.
+ *
+ * Printing the value of a variable traverses the value's nodes, which must not happen on several threads at once.
+ * So the values of all variables in the document are printed and cached by their scopes before the parts are
+ * handed out, and variable references only read those cached values.
+ *
+ * The flattening and printing times that are reported to a {@link MetricsListener} are the sums over all parts.
+ */
+final class ParallelTranslator {
+
+    // Each thread handles several parts, so that parts which take longer than others are balanced out.
+    private static final int PARTS_PER_THREAD = 4;
+
+    private final LessProcessor.Result _result;
+    private final boolean _compress;
+    private final int _threadCount;
+    private final ExecutorService _executor;
+    private final MetricsListener _metricsListener;
+
+    /**
+     * @param executor Runs the parts. It is shared with other translations, so it is not shut down afterwards.
+     */
+    ParallelTranslator(LessProcessor.Result result, int threadCount, ExecutorService executor, MetricsListener metricsListener) {
+        _result = result;
+        _compress = result.isCompressionEnabled();
+        _threadCount = threadCount;
+        _executor = executor;
+        _metricsListener = metricsListener;
+    }
+
+    /**
+     * Translates the result's scope and prints it to the given printer.
+     */
+    Printer translate(Printer printer) {
+        ScopeNode scope = _result.getScope();
+
+        long startTime = LessProcessor.timestamp(_metricsListener);
+        scope.traverse(new NestedMediaQueries());
+        long flattenStartTime = LessProcessor.timestamp(_metricsListener);
+        cacheVariables(scope);
+        long flattenTime = LessProcessor.timestamp(_metricsListener) - flattenStartTime;
+        long printTime = 0;
+
+        int childCount = scope.getChildren().size();
+        int partCount = Math.min(childCount, _threadCount * PARTS_PER_THREAD);
+        List<Future<Part>> futures = new ArrayList<Future<Part>>(partCount);
+
+        try {
+            for (int i = 0; i < partCount; i++) {
+                int start = childCount * i / partCount;
+                int end = childCount * (i + 1) / partCount;
+                futures.add(_executor.submit(new Part(scope, start, end)));
+            }
+
+            for (Future<Part> future : futures) {
+                Part part = getPart(future);
+                long appendStartTime = LessProcessor.timestamp(_metricsListener);
+                printer.append(part._printer);
+                printTime += part._printTime + LessProcessor.timestamp(_metricsListener) - appendStartTime;
+                flattenTime += part._flattenTime;
+            }
+        } finally {
+            // Stop the remaining parts if one of them failed
+            for (Future<Part> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        if (_metricsListener != null) {
+            _metricsListener.phaseCompleted(_result, MetricsListener.Phase.NESTED_MEDIA_QUERIES, flattenStartTime - startTime);
+            _metricsListener.phaseCompleted(_result, MetricsListener.Phase.FLATTEN_NESTED_RULE_SETS, flattenTime);
+            _metricsListener.phaseCompleted(_result, MetricsListener.Phase.PRINT, printTime);
+            _metricsListener.countRecorded(_result, MetricsListener.Count.VARIABLES_RESOLVED, printer.getResolvedReferenceCount());
+        }
+
+        return printer;
+    }
+
+    private static void cacheVariables(ScopeNode scope) {
+        scope.traverse(new InclusiveNodeVisitor() {
+            @Override
+            public boolean enter(ScopeNode node) {
+                for (String name : node.getVariableNames()) {
+                    node.getPrintedVariable(name);
+                }
+                return true;
+            }
+        });
+    }
+
+    private static Part getPart(Future<Part> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a part of the output to be translated.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Flattens and prints a range of the top-level nodes.
+     */
+    private class Part implements Callable<Part> {
+
+        private final ScopeNode _scope;
+        private final int _start;
+        private final int _end;
+        private Printer _printer;
+        private long _flattenTime;
+        private long _printTime;
+
+        private Part(ScopeNode scope, int start, int end) {
+            _scope = scope;
+            _start = start;
+            _end = end;
+        }
+
+        @Override
+        public Part call() {
+            long startTime = LessProcessor.timestamp(_metricsListener);
+            FlattenNestedRuleSets flattener = new FlattenNestedRuleSets();
+            for (int i = _start; i < _end; i++) {
+                _scope.getChildren().get(i).traverse(flattener);
+            }
+            long printStartTime = LessProcessor.timestamp(_metricsListener);
+            _printer = Printer.forPart(_compress).printChildren(_scope, _start, _end);
+
+            _flattenTime = printStartTime - startTime;
+            _printTime = LessProcessor.timestamp(_metricsListener) - printStartTime;
+            return this;
+        }
+    }
+}
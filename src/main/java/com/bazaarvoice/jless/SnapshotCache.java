@@ -0,0 +1,246 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import com.bazaarvoice.jless.ast.util.NodeSnapshots;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the parsed scopes of input files in a directory of snapshot files, so that large stylesheets (such as
+ * shared libraries of variables and mixins) are only parsed once, rather than once each time the JVM starts.
+ * Loading a snapshot rebuilds the same tree that parsing the input would produce.
+ *
+ * Snapshots are named by a hash of the input bytes, the input's directory, the processor's translation option and
+ * import paths, and the key of the parent result, so a changed input never matches an old snapshot, and identical
+ * inputs that import different files don't share one. Parents that were returned by this cache are
+ * identified by their own key. Inputs with any other parent are processed without a snapshot, since such a parent
+ * can't be identified in a later run. Files imported by an input are not part of the key. Instead, each snapshot
+ * starts with the path and a hash of the content of each imported file, and it is only used if all of them are
+ * unchanged.
+ *
+ * Outdated snapshots are left in the directory until it is cleared. Snapshots that can't be read (for example,
+ * ones written by an older version) are replaced.
+ */
+public class SnapshotCache {
+
+    private static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+    /**
+     * Changes to the header of the snapshot files must increase this version, which invalidates older snapshots.
+     */
+    private static final int HEADER_VERSION = 1;
+    private static final int MINIMUM_IMPORT_SIZE = 4; // Two empty strings
+
+    private final LessProcessor _processor;
+    private final File _directory;
+    private final Map<LessProcessor.Result, String> _resultToKeyMap = new WeakHashMap<LessProcessor.Result, String>();
+    private final AtomicLong _hitCount = new AtomicLong();
+    private final AtomicLong _missCount = new AtomicLong();
+
+    public SnapshotCache(LessProcessor processor, File directory) {
+        _processor = processor;
+        _directory = directory;
+    }
+
+    public LessProcessor getProcessor() {
+        return _processor;
+    }
+
+    public File getDirectory() {
+        return _directory;
+    }
+
+    public LessProcessor.Result process(File input) throws IOException {
+        return process(null, input);
+    }
+
+    /**
+     * @return The result of the snapshot for the given parent and input, or the result of processing them if no
+     * snapshot exists yet.
+     * @see LessProcessor#process(LessProcessor.Result, File)
+     */
+    public LessProcessor.Result process(LessProcessor.Result parent, File input) throws IOException {
+        String parentKey = null;
+        if (parent != null) {
+            parentKey = getParentKey(parent);
+            if (parentKey == null) {
+                return _processor.process(parent, input);
+            }
+        }
+
+        byte[] inputBytes = FileUtils.readFileToByteArray(input);
+        File directory = input.getAbsoluteFile().getParentFile();
+        String key = getKey(parentKey, inputBytes, directory);
+        File snapshot = new File(_directory, key + SNAPSHOT_EXTENSION);
+
+        LessProcessor.Result result;
+        Set<File> importedFiles = new HashSet<File>();
+        ScopeNode scope = readSnapshot(snapshot, importedFiles);
+        if (scope != null) {
+            _hitCount.incrementAndGet();
+            result = _processor.createResult(parent, scope, 0, importedFiles);
+        } else {
+            _missCount.incrementAndGet();
+            result = _processor.process(parent, new ByteArrayInputStream(inputBytes), directory);
+            // The result has not been translated yet, so its scope is still exactly as parsed
+            writeSnapshot(snapshot, result);
+        }
+
+        synchronized (this) {
+            _resultToKeyMap.put(result, key);
+        }
+
+        return result;
+    }
+
+    public long getHitCount() {
+        return _hitCount.get();
+    }
+
+    public long getMissCount() {
+        return _missCount.get();
+    }
+
+    /**
+     * Deletes all snapshots in the directory. The hit and miss counts are preserved.
+     */
+    public void clear() {
+        File[] files = _directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (file.getName().endsWith(SNAPSHOT_EXTENSION)) {
+                file.delete();
+            }
+        }
+    }
+
+    private synchronized String getParentKey(LessProcessor.Result parent) {
+        return _resultToKeyMap.get(parent);
+    }
+
+    private String getKey(String parentKey, byte[] inputBytes, File directory) throws IOException {
+        MessageDigest digest = CompilationCache.createDigest();
+
+        digest.update((byte) NodeSnapshots.FORMAT_VERSION);
+        digest.update((byte) HEADER_VERSION);
+        if (parentKey != null) {
+            digest.update(parentKey.getBytes());
+        }
+        digest.update((byte) (_processor.isTranslationEnabled() ? 1 : 0));
+        CompilationCache.updateImportDirectories(digest, directory, _processor.getImportPaths());
+        digest.update(inputBytes);
+
+        return CompilationCache.toHex(digest.digest());
+    }
+
+    /**
+     * @param importedFiles Receives the files that the snapshot's input imported.
+     * @return The snapshot's scope, or null if there is no usable snapshot.
+     */
+    private static ScopeNode readSnapshot(File snapshot, Set<File> importedFiles) {
+        if (!snapshot.isFile()) {
+            return null;
+        }
+
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(FileUtils.readFileToByteArray(snapshot)));
+            if (!readImports(input, importedFiles)) {
+                return null;
+            }
+            return NodeSnapshots.read(input);
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            // A damaged snapshot may not describe a valid tree
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether all imported files still have the content that they had when the snapshot was written.
+     */
+    private static boolean readImports(DataInputStream input, Set<File> importedFiles) throws IOException {
+        int count = input.readInt();
+        if (count < 0 || count > input.available() / MINIMUM_IMPORT_SIZE) {
+            throw new IOException("The snapshot lists more imported files than it can hold.");
+        }
+
+        for (int i = 0; i < count; i++) {
+            File file = new File(input.readUTF());
+            String hash = input.readUTF();
+            if (!file.isFile() || !hash.equals(hash(file))) {
+                return false;
+            }
+            importedFiles.add(file);
+        }
+        return true;
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest = CompilationCache.createDigest();
+        digest.update(FileUtils.readFileToByteArray(file));
+        return CompilationCache.toHex(digest.digest());
+    }
+
+    /**
+     * Writes to a temporary file first, so that other processes never read a partially written snapshot.
+     */
+    private void writeSnapshot(File snapshot, LessProcessor.Result result) throws IOException {
+        if (!_directory.isDirectory() && !_directory.mkdirs()) {
+            throw new IOException("Unable to create the snapshot directory " + _directory + ".");
+        }
+
+        File temporaryFile = File.createTempFile("jless", ".tmp", _directory);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+        try {
+            output.writeInt(result.getImportedFiles().size());
+            for (File file : result.getImportedFiles()) {
+                output.writeUTF(file.getPath());
+                output.writeUTF(hash(file));
+            }
+            NodeSnapshots.write(result.getScope(), output);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+
+        // Some platforms can't rename over an existing file, such as a snapshot that could not be read
+        if (!temporaryFile.renameTo(snapshot) && !(snapshot.delete() && temporaryFile.renameTo(snapshot))) {
+            temporaryFile.delete();
+        }
+    }
+}
@@ -25,12 +25,14 @@ import com.bazaarvoice.jless.ast.visitor.NodeNavigationVisitor;
 import com.google.common.base.Preconditions;
 import org.parboiled.trees.TreeUtils;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Stack;
+import java.util.RandomAccess;
 
 /**
  * Super class for all internal nodes of the tree.
@@ -40,12 +42,22 @@ import java.util.Stack;
  * typical {@link ListIterator} operations, as well as modifications at arbitrary indices from the iterator.
  * Additionally, the child set may be modified while iteration is occurring without going through the iterator
  * directly. 
+ *
+ * Trees contain a large number of internal nodes with only a few children each, so the children are kept in a
+ * plain array that starts out small, and the read-only view of the children and the iterator stack are only
+ * created when first needed. Every traversal pushes an iterator, so popped iterators are kept for reuse by the
+ * next push at the same depth.
  */
 public abstract class InternalNode extends Node {
 
-    private List<Node> _children = new ArrayList<Node>();
-    private List<Node> _childrenView = Collections.unmodifiableList(_children);
-    private Stack<MutableChildIterator> _childIteratorStack = new Stack<MutableChildIterator>();
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final int INITIAL_CAPACITY = 2;
+
+    private Node[] _children = NO_CHILDREN;
+    private int _childCount = 0;
+    private List<Node> _childrenView;
+    private List<MutableChildIterator> _childIteratorStack;
+    private int _childIteratorCount = 0;
     private NodeAdditionVisitor _additionVisitor = InclusiveNodeVisitor.getInstance();
 
     public InternalNode() {
@@ -57,6 +69,9 @@ public abstract class InternalNode extends Node {
 
     @Override
     public List<Node> getChildren() {
+        if (_childrenView == null) {
+            _childrenView = new ChildrenView();
+        }
         return _childrenView;
     }
 
@@ -73,7 +88,7 @@ public abstract class InternalNode extends Node {
 
     @Override
     public boolean addChild(Node child) {
-        addChild(_children.size(), child);
+        addChild(_childCount, child);
         return true;
     }
 
@@ -85,7 +100,7 @@ public abstract class InternalNode extends Node {
 
     @Override
     public void addChild(int index, Node child) {
-        Preconditions.checkElementIndex(index, _children.size() + 1);
+        Preconditions.checkElementIndex(index, _childCount + 1);
 
         // ignore empty nodes
         if (child == null || !child.hasData()) {
@@ -107,18 +122,23 @@ public abstract class InternalNode extends Node {
         }
 
         // attach new child
-        _children.add(index, child);
+        if (_childCount == _children.length) {
+            _children = Arrays.copyOf(_children, Math.max(INITIAL_CAPACITY, _childCount * 2));
+        }
+        System.arraycopy(_children, index, _children, index + 1, _childCount - index);
+        _children[index] = child;
+        _childCount++;
         child.setParent(this);
 
         // notify iterators
-        for (MutableChildIterator it : _childIteratorStack) {
-            it.addEvent(index, child);
+        for (int i = 0; i < _childIteratorCount; i++) {
+            _childIteratorStack.get(i).addEvent(index, child);
         }
     }
 
     @Override
     public void setChild(int index, Node child) {
-        Preconditions.checkElementIndex(index, _children.size());
+        Preconditions.checkElementIndex(index, _childCount);
 
         // ignore empty nodes
         if (child == null) {
@@ -126,7 +146,7 @@ public abstract class InternalNode extends Node {
         }
 
         // detach old child
-        Node old = _children.get(index);
+        Node old = _children[index];
         if (old == child) {
             return;
         }
@@ -139,41 +159,83 @@ public abstract class InternalNode extends Node {
         }
 
         // attach new child
-        _children.set(index, child);
+        _children[index] = child;
         child.setParent(this);
     }
 
     @Override
     public Node removeChild(int index) {
         // remove and detach child
-        Preconditions.checkElementIndex(index, _children.size());
-        Node removed = _children.remove(index);
+        Preconditions.checkElementIndex(index, _childCount);
+        Node removed = _children[index];
+        System.arraycopy(_children, index + 1, _children, index, _childCount - index - 1);
+        _children[--_childCount] = null;
         removed.setParent(null);
 
         // notify iterators
-        for (MutableChildIterator it : _childIteratorStack) {
-            it.removeEvent(index);
+        for (int i = 0; i < _childIteratorCount; i++) {
+            _childIteratorStack.get(i).removeEvent(index);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Removes all children of the given class in a single pass, keeping the remaining children in order.
+     * @return The removed children, in their original order. The list is immutable if nothing was removed.
+     */
+    public <C extends Node> List<C> removeChildren(Class<C> targetClass) {
+        List<C> removed = null;
+        int kept = 0;
+
+        for (int i = 0; i < _childCount; i++) {
+            Node child = _children[i];
+            if (!targetClass.isInstance(child)) {
+                _children[kept++] = child;
+                continue;
+            }
+
+            // most calls find nothing to remove, so only allocate once there is something to return
+            if (removed == null) {
+                removed = new ArrayList<C>();
+            }
+            //noinspection unchecked
+            removed.add((C) child);
+            child.setParent(null);
+
+            // notify iterators as if the children were removed one at a time
+            for (int j = 0; j < _childIteratorCount; j++) {
+                _childIteratorStack.get(j).removeEvent(i - removed.size() + 1);
+            }
         }
 
+        if (removed == null) {
+            return Collections.emptyList();
+        }
+
+        Arrays.fill(_children, kept, _childCount, null);
+        _childCount = kept;
+
         return removed;
     }
 
     public void clearChildren() {
-        while (_children.size() > 0) {
-            removeChild(0);
+        // remove from the end, so that no children have to be shifted
+        while (_childCount > 0) {
+            removeChild(_childCount - 1);
         }
     }
 
     // ********** Iteration **********
 
     public boolean isIterating() {
-        return !_childIteratorStack.isEmpty();
+        return _childIteratorCount > 0;
     }
 
     public RandomAccessListIterator<Node> getLatestChildIterator() {
         Preconditions.checkState(isIterating(), "There are no child iterators.");
 
-        return _childIteratorStack.peek();
+        return _childIteratorStack.get(_childIteratorCount - 1);
     }
 
     public RandomAccessListIterator<Node> pushChildIterator() {
@@ -181,19 +243,34 @@ public abstract class InternalNode extends Node {
     }
 
     public RandomAccessListIterator<Node> pushChildIterator(boolean copyState) {
-        MutableChildIterator it = new MutableChildIterator();
-        
+        MutableChildIterator it;
+        if (_childIteratorStack == null) {
+            _childIteratorStack = new ArrayList<MutableChildIterator>(INITIAL_CAPACITY);
+        }
+        if (_childIteratorCount < _childIteratorStack.size()) {
+            it = _childIteratorStack.get(_childIteratorCount);
+            it.reset();
+        } else {
+            it = new MutableChildIterator();
+            _childIteratorStack.add(it);
+        }
+
         if (copyState) {
             it.copy(getLatestChildIterator());
         }
 
-        _childIteratorStack.push(it);
+        _childIteratorCount++;
 
         return it;
     }
 
+    /**
+     * Removes the latest child iterator. It must not be used afterwards, since it will be handed out again.
+     */
     public void popChildIterator() {
-        _childIteratorStack.pop();
+        Preconditions.checkState(isIterating(), "There are no child iterators.");
+
+        _childIteratorCount--;
     }
 
     // ********** Visitors **********
@@ -246,22 +323,54 @@ public abstract class InternalNode extends Node {
      */
     @Override
     public InternalNode clone() {
+        return clone(null);
+    }
+
+    /**
+     * Clones this node like {@link #clone()}, but leaves out any descendants of the given class. This is cheaper
+     * than filtering them out of the copy afterwards.
+     */
+    public InternalNode clone(Class<? extends Node> excludedClass) {
         InternalNode node = (InternalNode) super.clone();
 
         // Reset internal state
-        node._children = new ArrayList<Node>();
-        node._childrenView = Collections.unmodifiableList(node._children);
-        node._childIteratorStack = new Stack<MutableChildIterator>();
+        node._children = (_childCount == 0) ? NO_CHILDREN : new Node[_childCount];
+        node._childCount = 0;
+        node._childrenView = null;
+        node._childIteratorStack = null;
+        node._childIteratorCount = 0;
 
-        cloneChildren(node);
+        cloneChildren(node, excludedClass);
 
         return node;
     }
 
-    protected void cloneChildren(InternalNode node) {
-        // Copy all children
-        for (Node child : _children) {
-            TreeUtils.addChild(node, child.clone());
+    protected void cloneChildren(InternalNode node, Class<? extends Node> excludedClass) {
+        // Copy all children that are not excluded
+        for (int i = 0; i < _childCount; i++) {
+            Node child = _children[i];
+            if (excludedClass != null && excludedClass.isInstance(child)) {
+                continue;
+            }
+            Node childClone = (child instanceof InternalNode) ? ((InternalNode) child).clone(excludedClass) : child.clone();
+            TreeUtils.addChild(node, childClone);
+        }
+    }
+
+    /**
+     * Read-only view of the children, since all modifications must go through this node.
+     */
+    private class ChildrenView extends AbstractList<Node> implements RandomAccess {
+
+        @Override
+        public Node get(int index) {
+            Preconditions.checkElementIndex(index, _childCount);
+            return _children[index];
+        }
+
+        @Override
+        public int size() {
+            return _childCount;
         }
     }
 
@@ -272,16 +381,16 @@ public abstract class InternalNode extends Node {
 
         @Override
         public boolean hasNext() {
-            return _cursor != _children.size();
+            return _cursor != _childCount;
         }
 
         @Override
         public Node next() {
-            Preconditions.checkPositionIndex(_cursor + 1, _children.size());
+            Preconditions.checkPositionIndex(_cursor + 1, _childCount);
 
             _lastReturned = _cursor;
 
-            return _children.get(_cursor++);
+            return _children[_cursor++];
         }
 
         @Override
@@ -291,11 +400,11 @@ public abstract class InternalNode extends Node {
 
         @Override
         public Node previous() {
-            Preconditions.checkPositionIndex(_cursor - 1, _children.size());
+            Preconditions.checkPositionIndex(_cursor - 1, _childCount);
 
             _lastReturned = --_cursor;
 
-            return _children.get(_cursor);
+            return _children[_cursor];
         }
 
         @Override
@@ -354,6 +463,11 @@ public abstract class InternalNode extends Node {
             _lastReturned = -1;
         }
 
+        private void reset() {
+            _cursor = 0;
+            _lastReturned = -1;
+        }
+
         @Override
         public void copy(ListIterator<Node> iterator) {
             _cursor = iterator.nextIndex();
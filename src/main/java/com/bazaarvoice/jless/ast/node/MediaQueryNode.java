@@ -21,12 +21,28 @@ package com.bazaarvoice.jless.ast.node;
 import com.bazaarvoice.jless.ast.visitor.NodeAdditionVisitor;
 import com.bazaarvoice.jless.ast.visitor.NodeNavigationVisitor;
 
+import java.util.List;
+
 public class MediaQueryNode extends InternalNode {
 
     public MediaQueryNode() {
         super();
     }
 
+    /**
+     * @return The scope of this media query, or null if it has none yet.
+     */
+    public ScopeNode getScope() {
+        List<Node> children = getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            Node child = children.get(i);
+            if (child instanceof ScopeNode) {
+                return (ScopeNode) child;
+            }
+        }
+        return null;
+    }
+
     @Override
     protected boolean add(NodeAdditionVisitor visitor) {
         return visitor.add(this);
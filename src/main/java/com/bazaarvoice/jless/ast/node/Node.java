@@ -91,8 +91,15 @@ public abstract class Node implements MutableTreeNode<Node>, Cloneable {
             public boolean visitInvisible(Node node) {
                 return true; // Always print invisible nodes
             }
+
+            @Override
+            protected boolean isResolvingReferences() {
+                return false; // Nodes may be printed during parsing, before references can be resolved
+            }
         };
         traverse(p);
-        return p.toString();
+        String output = p.toString();
+        p.recycle();
+        return output;
     }
 }
@@ -21,6 +21,8 @@ package com.bazaarvoice.jless.ast.node;
 import com.bazaarvoice.jless.ast.visitor.NodeAdditionVisitor;
 import com.bazaarvoice.jless.ast.visitor.NodeNavigationVisitor;
 
+import java.util.List;
+
 public class RuleSetNode extends InternalNode {
 
     public RuleSetNode() {
@@ -31,6 +33,34 @@ public class RuleSetNode extends InternalNode {
         super(child);
     }
 
+    /**
+     * @return The selector group of this rule set, or null if it has none yet.
+     */
+    public SelectorGroupNode getSelectorGroup() {
+        List<Node> children = getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            Node child = children.get(i);
+            if (child instanceof SelectorGroupNode) {
+                return (SelectorGroupNode) child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The scope of this rule set, or null if it has none yet.
+     */
+    public ScopeNode getScope() {
+        List<Node> children = getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            Node child = children.get(i);
+            if (child instanceof ScopeNode) {
+                return (ScopeNode) child;
+            }
+        }
+        return null;
+    }
+
     @Override
     protected boolean add(NodeAdditionVisitor visitor) {
         return visitor.add(this);
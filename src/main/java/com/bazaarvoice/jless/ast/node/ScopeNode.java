@@ -30,6 +30,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class ScopeNode extends InternalNode {
 
@@ -39,6 +40,8 @@ public class ScopeNode extends InternalNode {
     private Map<String, RuleSetNode> _selectorToRuleSetMap = new HashMap<String, RuleSetNode>();
     private List<VariableDefinitionNode> _parameterDefinitions = new ArrayList<VariableDefinitionNode>();
     private Map<String, PropertyNode> _propertyNameToNodeMap = new HashMap<String, PropertyNode>();
+    private Map<String, Integer> _propertyNameToIndexMap = new HashMap<String, Integer>();
+    private Map<String, String> _variableNameToPrintedValueMap;
     private ScopeNode _parentScope;
     private boolean _bracketsDisplayed = true;
 
@@ -65,10 +68,42 @@ public class ScopeNode extends InternalNode {
         return _variableNameToValueMap.get(name);
     }
 
+    /**
+     * Prints the value of a variable defined in this scope. The printed value is cached, since it is typically
+     * requested by many resolved {@link VariableReferenceNode}s. This scope may be shared as the parent of results
+     * that are printed concurrently, so access to the cache is serialized.
+     * @return The printed value, or null if the variable is not defined in this scope.
+     */
+    public synchronized String getPrintedVariable(String name) {
+        if (_variableNameToPrintedValueMap == null) {
+            _variableNameToPrintedValueMap = new HashMap<String, String>();
+        }
+
+        String printedValue = _variableNameToPrintedValueMap.get(name);
+        if (printedValue == null) {
+            ExpressionGroupNode value = _variableNameToValueMap.get(name);
+            if (value == null) {
+                return null;
+            }
+            printedValue = value.toString();
+            _variableNameToPrintedValueMap.put(name, printedValue);
+        }
+
+        return printedValue;
+    }
+
+    public Set<String> getVariableNames() {
+        return Collections.unmodifiableSet(_variableNameToValueMap.keySet());
+    }
+
     public RuleSetNode getRuleSet(String selectorGroup) {
         return _selectorToRuleSetMap.get(selectorGroup);
     }
 
+    public Set<String> getRuleSetSelectors() {
+        return Collections.unmodifiableSet(_selectorToRuleSetMap.keySet());
+    }
+
     public ScopeNode getParentScope() {
         return _parentScope;
     }
@@ -86,7 +121,7 @@ public class ScopeNode extends InternalNode {
     }
 
     /**
-     * Creates a clone of this scope to be attached to the tree at the site of a mixin reference. If an ArgumentsNode is passed,
+     * Creates a copy of this scope to be attached to the tree at the site of a mixin reference. If an ArgumentsNode is passed,
      * each of its values override those defined by the mixin's parameters.
      */
     public ScopeNode callMixin(String name, ArgumentsNode arguments) {
@@ -95,9 +130,17 @@ public class ScopeNode extends InternalNode {
             throw new IllegalMixinArgumentException(name, _parameterDefinitions.size());
         }
 
-        // Clone scope and filter out any white space
-        ScopeNode mixinScope = clone();
-        NodeTreeUtils.filterLineBreaks(mixinScope);
+        // Copy the children without any line breaks. The copy only carries them until they are absorbed by the
+        // calling scope, which indexes them at that point, so only the parameters need to be tracked here.
+        final ScopeNode mixinScope = new ScopeNode();
+        mixinScope.setAdditionVisitor(new InclusiveNodeVisitor() {
+            @Override
+            public boolean add(ParametersNode node) {
+                mixinScope._parameterDefinitions.addAll(NodeTreeUtils.getChildren(node, VariableDefinitionNode.class));
+                return super.add(node);
+            }
+        });
+        super.cloneChildren(mixinScope, LineBreakNode.class);
 
         // If arguments were passed, apply them
         for (int i = 0; i < argumentList.size(); i++) {
@@ -136,13 +179,13 @@ public class ScopeNode extends InternalNode {
              */
             @Override
             public boolean add(RuleSetNode node) {
-                SelectorGroupNode selectorGroup = NodeTreeUtils.getFirstChild(node, SelectorGroupNode.class);
-                for (SelectorNode selectorNode : NodeTreeUtils.getChildren(selectorGroup, SelectorNode.class)) {
-                    StringBuilder sb = new StringBuilder();
-                    for (Node selectorChild : selectorNode.getChildren()) {
-                        sb.append(selectorChild.toString());
+                List<Node> selectorNodes = node.getSelectorGroup().getChildren();
+                for (int i = 0; i < selectorNodes.size(); i++) {
+                    Node selectorNode = selectorNodes.get(i);
+                    if (!(selectorNode instanceof SelectorNode)) {
+                        continue;
                     }
-                    String selector = sb.toString();
+                    String selector = ((SelectorNode) selectorNode).getSelectorText();
                     // Mixins lock on first definition
                     if (!_selectorToRuleSetMap.containsKey(selector)) {
                         _selectorToRuleSetMap.put(selector, node);
@@ -193,7 +236,7 @@ public class ScopeNode extends InternalNode {
                 // Check if this property has been seen before
                 if (_propertyNameToNodeMap.containsKey(name)) {
                     PropertyNode oldPropertyNode = _propertyNameToNodeMap.get(name);
-                    int oldPropertyIndex = getChildren().indexOf(oldPropertyNode);
+                    int oldPropertyIndex = indexOfChild(oldPropertyNode, _propertyNameToIndexMap.get(name));
 
                     if (oldPropertyNode.isVisible()) {
                         // Hide the unneeded property
@@ -206,14 +249,27 @@ public class ScopeNode extends InternalNode {
                     }
                 }
 
-                // Store the property as the latest for this name
+                // Store the property as the latest for this name, along with the index it will most likely be added at
                 _propertyNameToNodeMap.put(name, node);
+                _propertyNameToIndexMap.put(name, getChildren().size());
 
                 return super.add(node);
             }
         });
     }
 
+    /**
+     * Finds a child, checking the index it was last known to be at before searching all children. Children are
+     * nearly always appended, so this avoids a linear search in the common case.
+     */
+    private int indexOfChild(Node child, int expectedIndex) {
+        List<Node> children = getChildren();
+        if (expectedIndex < children.size() && children.get(expectedIndex) == child) {
+            return expectedIndex;
+        }
+        return children.indexOf(child);
+    }
+
     private boolean hideWhiteSpaceNode(int index) {
         if (index < 0 || index >= getChildren().size()) {
             return false;
@@ -260,7 +316,7 @@ public class ScopeNode extends InternalNode {
      * Recreate internal state before children are cloned.
      */
     @Override
-    protected void cloneChildren(InternalNode node) {
+    protected void cloneChildren(InternalNode node, Class<? extends Node> excludedClass) {
         ScopeNode scope = (ScopeNode) node;
 
         // Reset internal state
@@ -268,8 +324,10 @@ public class ScopeNode extends InternalNode {
         scope._selectorToRuleSetMap = new HashMap<String, RuleSetNode>();
         scope._parameterDefinitions = new ArrayList<VariableDefinitionNode>();
         scope._propertyNameToNodeMap = new HashMap<String, PropertyNode>();
+        scope._propertyNameToIndexMap = new HashMap<String, Integer>();
+        scope._variableNameToPrintedValueMap = null;
         scope.setAdditionVisitor();
 
-        super.cloneChildren(node);
+        super.cloneChildren(node, excludedClass);
     }
 }
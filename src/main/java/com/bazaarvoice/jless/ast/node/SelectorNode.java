@@ -23,6 +23,8 @@ import com.bazaarvoice.jless.ast.visitor.InclusiveNodeVisitor;
 import com.bazaarvoice.jless.ast.visitor.NodeAdditionVisitor;
 import com.bazaarvoice.jless.ast.visitor.NodeNavigationVisitor;
 
+import java.util.List;
+
 public class SelectorNode extends InternalNode {
 
     public SelectorNode() {
@@ -35,6 +37,23 @@ public class SelectorNode extends InternalNode {
         addChild(child);
     }
 
+    /**
+     * @return The text of this selector, as it would be printed. This is built directly from the segments, which
+     * is much cheaper than printing the selector when it is only needed as a lookup key.
+     */
+    public String getSelectorText() {
+        StringBuilder sb = new StringBuilder();
+        for (Node child : getChildren()) {
+            if (child instanceof SelectorSegmentNode) {
+                SelectorSegmentNode segment = (SelectorSegmentNode) child;
+                sb.append(segment.getCombinator()).append(segment.getSimpleSelector());
+            } else {
+                sb.append(child.toString());
+            }
+        }
+        return sb.toString();
+    }
+
     private void setAdditionVisitor() {
         setAdditionVisitor(new InclusiveNodeVisitor() {
             /**
@@ -63,12 +82,53 @@ public class SelectorNode extends InternalNode {
     }
 
     private void setCombinatorIfNotSubElement(SelectorNode selector) {
-        SelectorSegmentNode sourceSegment = NodeTreeUtils.getFirstChild(selector, SelectorSegmentNode.class);
-        if (!sourceSegment.isSubElementSelector() && sourceSegment.getCombinator().equals(SelectorSegmentNode.NO_COMBINATOR)) {
-            sourceSegment.setCombinator(SelectorSegmentNode.DESCENDANT_COMBINATOR);
+        setCombinatorIfNotSubElement(NodeTreeUtils.getFirstChild(selector, SelectorSegmentNode.class));
+    }
+
+    private static void setCombinatorIfNotSubElement(SelectorSegmentNode segment) {
+        if (!segment.isSubElementSelector() && segment.getCombinator().equals(SelectorSegmentNode.NO_COMBINATOR)) {
+            segment.setCombinator(SelectorSegmentNode.DESCENDANT_COMBINATOR);
         }
     }
 
+    /**
+     * Creates a selector that combines this selector with one that is nested inside its rule set. The result is the
+     * same as adding a clone of the nested selector to a clone of this one, but each segment is only copied once and
+     * neither selector is modified.
+     */
+    public SelectorNode combine(SelectorNode nestedSelector) {
+        SelectorNode combined = new SelectorNode();
+        List<Node> nestedSegments = nestedSelector.getChildren();
+        int nestedStart = 0;
+
+        // If the first nested segment is a universal ("*") segment, it must remain first in the list
+        SelectorSegmentNode universalSegment = (SelectorSegmentNode) nestedSegments.get(0);
+        if (universalSegment.isUniversal()) {
+            combined.addChild(universalSegment.clone());
+            nestedStart = 1;
+        }
+
+        for (Node segment : getChildren()) {
+            SelectorSegmentNode copy = (SelectorSegmentNode) segment.clone();
+            // The first segment of this selector follows the universal segment, if there is one
+            if (nestedStart == 1 && combined.getChildren().size() == 1) {
+                setCombinatorIfNotSubElement(copy);
+            }
+            combined.addChild(copy);
+        }
+
+        for (int i = nestedStart; i < nestedSegments.size(); i++) {
+            SelectorSegmentNode copy = (SelectorSegmentNode) nestedSegments.get(i).clone();
+            // The first nested segment (after any universal segment) is a descendant unless it has its own combinator
+            if (i == nestedStart) {
+                setCombinatorIfNotSubElement(copy);
+            }
+            combined.addChild(copy);
+        }
+
+        return combined;
+    }
+
     @Override
     protected boolean add(NodeAdditionVisitor visitor) {
         return visitor.add(this);
@@ -101,12 +161,12 @@ public class SelectorNode extends InternalNode {
      * Recreate internal state before children are cloned.
      */
     @Override
-    protected void cloneChildren(InternalNode node) {
+    protected void cloneChildren(InternalNode node, Class<? extends Node> excludedClass) {
         SelectorNode selector = (SelectorNode) node;
 
         // Reset internal state
         selector.setAdditionVisitor();
 
-        super.cloneChildren(node);
+        super.cloneChildren(node, excludedClass);
     }
 }
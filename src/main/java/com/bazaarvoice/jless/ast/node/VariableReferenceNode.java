@@ -25,23 +25,52 @@ import com.bazaarvoice.jless.ast.visitor.NodeNavigationVisitor;
 public class VariableReferenceNode extends LeafNode {
 
     private String _name;
+    private ScopeNode _scope;
 
     public VariableReferenceNode(String name) {
         _name = name;
     }
 
+    public String getName() {
+        return _name;
+    }
+
+    public boolean isResolved() {
+        return _scope != null;
+    }
+
     /**
-     * Search up the scope tree to locate the variable's value. The parser has already verified that
-     * the variable is defined.
+     * Binds this reference to the scope that defines its variable, so that later calls to {@link #getValue} only
+     * need to read that scope's cached copy of the printed value. This should only be done once the tree has
+     * reached its final shape (such as when the output is printed), since moving the reference could change
+     * which definition is visible to it.
+     * @return Whether the variable's definition was located.
      */
-    public String getValue() {
+    public boolean resolve() {
         for (ScopeNode scope = NodeTreeUtils.getParentScope(this); scope != null; scope = NodeTreeUtils.getParentScope(scope)) {
-            ExpressionGroupNode value = scope.getVariable(_name);
-            if (value == null) {
-                continue;
+            if (scope.getVariable(_name) != null) {
+                _scope = scope;
+                return true;
             }
+        }
+
+        return false;
+    }
+
+    /**
+     * Search up the scope tree to locate the variable's value, unless this reference has already been resolved.
+     * The parser has already verified that the variable is defined.
+     */
+    public String getValue() {
+        if (_scope != null) {
+            return _scope.getPrintedVariable(_name);
+        }
 
-            return value.toString();
+        for (ScopeNode scope = NodeTreeUtils.getParentScope(this); scope != null; scope = NodeTreeUtils.getParentScope(scope)) {
+            String value = scope.getPrintedVariable(_name);
+            if (value != null) {
+                return value;
+            }
         }
 
         return _name; // Unable to find the variable's value, return the name for now (helpful for debugging)
@@ -61,4 +90,14 @@ public class VariableReferenceNode extends LeafNode {
     protected boolean visitInvisible(NodeNavigationVisitor visitor) {
         return visitor.visitInvisible(this);
     }
+
+    /**
+     * A cloned reference may be attached somewhere else in the tree, so it must be resolved again.
+     */
+    @Override
+    public VariableReferenceNode clone() {
+        VariableReferenceNode node = (VariableReferenceNode) super.clone();
+        node._scope = null;
+        return node;
+    }
 }
@@ -0,0 +1,375 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.ast.util;
+
+import com.bazaarvoice.jless.ast.node.ArgumentsNode;
+import com.bazaarvoice.jless.ast.node.ExpressionGroupNode;
+import com.bazaarvoice.jless.ast.node.ExpressionNode;
+import com.bazaarvoice.jless.ast.node.ExpressionPhraseNode;
+import com.bazaarvoice.jless.ast.node.FilterArgumentNode;
+import com.bazaarvoice.jless.ast.node.FunctionNode;
+import com.bazaarvoice.jless.ast.node.InternalNode;
+import com.bazaarvoice.jless.ast.node.LineBreakNode;
+import com.bazaarvoice.jless.ast.node.MediaQueryNode;
+import com.bazaarvoice.jless.ast.node.MediaTypeNode;
+import com.bazaarvoice.jless.ast.node.MediaTypeRestriction;
+import com.bazaarvoice.jless.ast.node.MultipleLineCommentNode;
+import com.bazaarvoice.jless.ast.node.Node;
+import com.bazaarvoice.jless.ast.node.ParametersNode;
+import com.bazaarvoice.jless.ast.node.PlaceholderNode;
+import com.bazaarvoice.jless.ast.node.PropertyNode;
+import com.bazaarvoice.jless.ast.node.RuleSetNode;
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import com.bazaarvoice.jless.ast.node.SelectorGroupNode;
+import com.bazaarvoice.jless.ast.node.SelectorNode;
+import com.bazaarvoice.jless.ast.node.SelectorSegmentNode;
+import com.bazaarvoice.jless.ast.node.SimpleNode;
+import com.bazaarvoice.jless.ast.node.SingleLineCommentNode;
+import com.bazaarvoice.jless.ast.node.SpacingNode;
+import com.bazaarvoice.jless.ast.node.VariableDefinitionNode;
+import com.bazaarvoice.jless.ast.node.VariableReferenceNode;
+import com.bazaarvoice.jless.ast.node.WhiteSpaceCollectionNode;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a parsed node tree to a compact binary form and reads it back.
+ *
+ * Only the nodes themselves are written. When a snapshot is read, each node is added to its parent in the order
+ * it was parsed, so scopes rebuild their variable, rule set and parameter maps the same way they do when they are
+ * cloned. Nodes are created with their original visibility before they are added, which also matches cloning.
+ *
+ * Strings are written once and referred to by index afterwards, since property names, values and selectors
+ * repeat throughout a stylesheet. Variable references are written unresolved, so snapshots should be taken
+ * before a tree is translated or printed.
+ */
+public final class NodeSnapshots {
+
+    private static final int MAGIC = 0x4a4c4e53; // "JLNS"
+
+    /**
+     * Changes to the format or to the node classes must increase this version, which invalidates older snapshots.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    // Node types are written as their index in this list, so new types must be appended
+    private static final List<Class<? extends Node>> NODE_TYPES = new ArrayList<Class<? extends Node>>();
+
+    static {
+        NODE_TYPES.add(ArgumentsNode.class);
+        NODE_TYPES.add(ExpressionGroupNode.class);
+        NODE_TYPES.add(ExpressionNode.class);
+        NODE_TYPES.add(ExpressionPhraseNode.class);
+        NODE_TYPES.add(FilterArgumentNode.class);
+        NODE_TYPES.add(FunctionNode.class);
+        NODE_TYPES.add(LineBreakNode.class);
+        NODE_TYPES.add(MediaQueryNode.class);
+        NODE_TYPES.add(MediaTypeNode.class);
+        NODE_TYPES.add(MediaTypeRestriction.class);
+        NODE_TYPES.add(MultipleLineCommentNode.class);
+        NODE_TYPES.add(ParametersNode.class);
+        NODE_TYPES.add(PlaceholderNode.class);
+        NODE_TYPES.add(PropertyNode.class);
+        NODE_TYPES.add(RuleSetNode.class);
+        NODE_TYPES.add(ScopeNode.class);
+        NODE_TYPES.add(SelectorGroupNode.class);
+        NODE_TYPES.add(SelectorNode.class);
+        NODE_TYPES.add(SelectorSegmentNode.class);
+        NODE_TYPES.add(SimpleNode.class);
+        NODE_TYPES.add(SingleLineCommentNode.class);
+        NODE_TYPES.add(SpacingNode.class);
+        NODE_TYPES.add(VariableDefinitionNode.class);
+        NODE_TYPES.add(VariableReferenceNode.class);
+        NODE_TYPES.add(WhiteSpaceCollectionNode.class);
+    }
+
+    private static final int MINIMUM_NODE_SIZE = 2; // Type and flags
+
+    private static final int INVISIBLE_FLAG = 1;
+    private static final int BRACKETS_HIDDEN_FLAG = 2;
+    private static final int SUB_ELEMENT_SELECTOR_FLAG = 4;
+    private static final int UNIVERSAL_FLAG = 8;
+
+    private NodeSnapshots() {}
+
+    public static void write(ScopeNode scope, OutputStream output) throws IOException {
+        Writer writer = new Writer(new DataOutputStream(output));
+        writer._output.writeInt(MAGIC);
+        writer._output.writeInt(FORMAT_VERSION);
+        writer.writeNode(scope);
+        writer._output.flush();
+    }
+
+    /**
+     * Lengths in a damaged snapshot may hold any value, so they are checked against the rest of the input before
+     * anything is allocated for them. The input must report the rest of its content through
+     * {@link InputStream#available}, as in-memory and file streams do.
+     * @return The root scope of the snapshot, which has no parent scope.
+     * @throws IOException If the input is not a snapshot of the current format version, or is damaged.
+     */
+    public static ScopeNode read(InputStream input) throws IOException {
+        Reader reader = new Reader(new DataInputStream(input));
+        if (reader._input.readInt() != MAGIC) {
+            throw new IOException("The input is not a node snapshot.");
+        }
+        if (reader._input.readInt() != FORMAT_VERSION) {
+            throw new IOException("The node snapshot was written in an unsupported format version.");
+        }
+
+        Node root = reader.readNode();
+        if (!(root instanceof ScopeNode)) {
+            throw new IOException("The node snapshot does not contain a scope.");
+        }
+        return (ScopeNode) root;
+    }
+
+    private static final class Writer {
+        private final DataOutputStream _output;
+        private final Map<String, Integer> _stringToIndexMap = new HashMap<String, Integer>();
+
+        private Writer(DataOutputStream output) {
+            _output = output;
+        }
+
+        private void writeNode(Node node) throws IOException {
+            int type = NODE_TYPES.indexOf(node.getClass());
+            if (type < 0) {
+                throw new IllegalArgumentException("Nodes of type " + node.getClass().getName() + " can't be written to a snapshot.");
+            }
+
+            int flags = node.isVisible() ? 0 : INVISIBLE_FLAG;
+            if (node instanceof ScopeNode && !((ScopeNode) node).isBracketsDisplayed()) {
+                flags |= BRACKETS_HIDDEN_FLAG;
+            } else if (node instanceof SelectorSegmentNode) {
+                SelectorSegmentNode segment = (SelectorSegmentNode) node;
+                flags |= (segment.isSubElementSelector() ? SUB_ELEMENT_SELECTOR_FLAG : 0) | (segment.isUniversal() ? UNIVERSAL_FLAG : 0);
+            }
+
+            _output.writeByte(type);
+            _output.writeByte(flags);
+
+            if (node instanceof SimpleNode) {
+                writeString(((SimpleNode) node).getValue());
+            } else if (node instanceof LineBreakNode) {
+                writeCount(((LineBreakNode) node).getLineBreaks());
+            } else if (node instanceof SelectorSegmentNode) {
+                SelectorSegmentNode segment = (SelectorSegmentNode) node;
+                writeString(segment.getCombinator());
+                writeString(segment.getSimpleSelector());
+            } else if (node instanceof VariableReferenceNode) {
+                writeString(((VariableReferenceNode) node).getName());
+            } else if (node instanceof PropertyNode) {
+                writeString(((PropertyNode) node).getName());
+            } else if (node instanceof VariableDefinitionNode) {
+                writeString(((VariableDefinitionNode) node).getName());
+            } else if (node instanceof FunctionNode) {
+                writeString(((FunctionNode) node).getName());
+            } else if (node instanceof FilterArgumentNode) {
+                writeString(((FilterArgumentNode) node).getName());
+            }
+
+            if (node instanceof InternalNode) {
+                List<Node> children = node.getChildren();
+                writeCount(children.size());
+                for (Node child : children) {
+                    writeNode(child);
+                }
+            }
+        }
+
+        /**
+         * Writes 0 for null, 1 followed by the UTF-8 bytes for a new string, or the index of a repeated string plus 2.
+         */
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeCount(0);
+                return;
+            }
+
+            Integer index = _stringToIndexMap.get(value);
+            if (index != null) {
+                writeCount(index + 2);
+                return;
+            }
+
+            _stringToIndexMap.put(value, _stringToIndexMap.size());
+            byte[] bytes = value.getBytes("UTF-8");
+            writeCount(1);
+            writeCount(bytes.length);
+            _output.write(bytes);
+        }
+
+        /**
+         * Writes a non-negative number in as few bytes as possible, seven bits at a time.
+         */
+        private void writeCount(int count) throws IOException {
+            while ((count & ~0x7f) != 0) {
+                _output.writeByte((count & 0x7f) | 0x80);
+                count >>>= 7;
+            }
+            _output.writeByte(count);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream _input;
+        private final List<String> _strings = new ArrayList<String>();
+
+        private Reader(DataInputStream input) {
+            _input = input;
+        }
+
+        private Node readNode() throws IOException {
+            int type = _input.readUnsignedByte();
+            int flags = _input.readUnsignedByte();
+
+            Node node = createNode(type, flags);
+            node.setVisible((flags & INVISIBLE_FLAG) == 0);
+
+            if (node instanceof InternalNode) {
+                int childCount = readLength(MINIMUM_NODE_SIZE);
+                for (int i = 0; i < childCount; i++) {
+                    node.addChild(readNode());
+                }
+            }
+
+            return node;
+        }
+
+        private Node createNode(int type, int flags) throws IOException {
+            if (type >= NODE_TYPES.size()) {
+                throw new IOException("The node snapshot contains an unknown node type.");
+            }
+
+            Class<? extends Node> nodeClass = NODE_TYPES.get(type);
+
+            // Nodes whose constructors take a first child are created empty, and all children are added afterwards
+            if (nodeClass == ArgumentsNode.class) {
+                return new ArgumentsNode();
+            } else if (nodeClass == ExpressionGroupNode.class) {
+                return new ExpressionGroupNode();
+            } else if (nodeClass == ExpressionNode.class) {
+                return new ExpressionNode(null);
+            } else if (nodeClass == ExpressionPhraseNode.class) {
+                return new ExpressionPhraseNode(null);
+            } else if (nodeClass == FilterArgumentNode.class) {
+                return new FilterArgumentNode(readString());
+            } else if (nodeClass == FunctionNode.class) {
+                return new FunctionNode(readString());
+            } else if (nodeClass == LineBreakNode.class) {
+                return new LineBreakNode(readCount());
+            } else if (nodeClass == MediaQueryNode.class) {
+                return new MediaQueryNode();
+            } else if (nodeClass == MediaTypeNode.class) {
+                return new MediaTypeNode();
+            } else if (nodeClass == MediaTypeRestriction.class) {
+                return new MediaTypeRestriction();
+            } else if (nodeClass == MultipleLineCommentNode.class) {
+                return new MultipleLineCommentNode(readString());
+            } else if (nodeClass == ParametersNode.class) {
+                return new ParametersNode();
+            } else if (nodeClass == PlaceholderNode.class) {
+                return new PlaceholderNode();
+            } else if (nodeClass == PropertyNode.class) {
+                return new PropertyNode(readString());
+            } else if (nodeClass == RuleSetNode.class) {
+                return new RuleSetNode();
+            } else if (nodeClass == ScopeNode.class) {
+                ScopeNode scope = new ScopeNode();
+                scope.setBracketsDisplayed((flags & BRACKETS_HIDDEN_FLAG) == 0);
+                return scope;
+            } else if (nodeClass == SelectorGroupNode.class) {
+                return new SelectorGroupNode(null);
+            } else if (nodeClass == SelectorNode.class) {
+                return new SelectorNode();
+            } else if (nodeClass == SelectorSegmentNode.class) {
+                SelectorSegmentNode segment = new SelectorSegmentNode(readString(), readString());
+                segment.setSubElementSelector((flags & SUB_ELEMENT_SELECTOR_FLAG) != 0);
+                segment.setUniversal((flags & UNIVERSAL_FLAG) != 0);
+                return segment;
+            } else if (nodeClass == SimpleNode.class) {
+                return new SimpleNode(readString());
+            } else if (nodeClass == SingleLineCommentNode.class) {
+                return new SingleLineCommentNode(readString());
+            } else if (nodeClass == SpacingNode.class) {
+                return new SpacingNode(readString());
+            } else if (nodeClass == VariableDefinitionNode.class) {
+                return new VariableDefinitionNode(readString());
+            } else if (nodeClass == VariableReferenceNode.class) {
+                return new VariableReferenceNode(readString());
+            } else {
+                return new WhiteSpaceCollectionNode();
+            }
+        }
+
+        private String readString() throws IOException {
+            int code = readCount();
+            if (code == 0) {
+                return null;
+            }
+            if (code > 1) {
+                if (code - 2 >= _strings.size()) {
+                    throw new IOException("The node snapshot refers to an unknown string.");
+                }
+                return _strings.get(code - 2);
+            }
+
+            byte[] bytes = new byte[readLength(1)];
+            _input.readFully(bytes);
+            String value = new String(bytes, "UTF-8");
+            _strings.add(value);
+            return value;
+        }
+
+        /**
+         * Reads the number of items that follow, each of which takes up at least the given number of bytes.
+         */
+        private int readLength(int minimumItemSize) throws IOException {
+            int length = readCount();
+            if (length > _input.available() / minimumItemSize) {
+                throw new IOException("The node snapshot is truncated or damaged.");
+            }
+            return length;
+        }
+
+        private int readCount() throws IOException {
+            int count = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = _input.readUnsignedByte();
+                count |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    // Counts are never written as negative numbers
+                    if (count < 0) {
+                        break;
+                    }
+                    return count;
+                }
+            }
+            throw new IOException("The node snapshot contains a malformed number.");
+        }
+    }
+}
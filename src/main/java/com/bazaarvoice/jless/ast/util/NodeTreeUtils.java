@@ -25,11 +25,15 @@ import com.bazaarvoice.jless.ast.node.ScopeNode;
 import com.bazaarvoice.jless.ast.visitor.InclusiveNodeVisitor;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
 
 /**
  * Utilities for traversing and manipulating the node tree.
+ *
+ * The child lookups are called for most nodes during parsing, translation and printing, so they index into the
+ * children directly instead of iterating, and only allocate a result list once there is something to put in it.
  */
 public final class NodeTreeUtils {
 
@@ -47,19 +51,15 @@ public final class NodeTreeUtils {
             return false;
         }
 
-        boolean found = false;
-
-        RandomAccessListIterator<Node> it = parent.pushChildIterator(true);
-
-        // Search ahead for an instance of the target class
-        while (it.hasNext()) {
-            if (targetClass.isInstance(it.next())) {
-                found = true;
-                break;
+        // Search ahead of the current position for an instance of the target class
+        List<Node> children = parent.getChildren();
+        for (int i = parent.getLatestChildIterator().nextIndex(); i < children.size(); i++) {
+            if (targetClass.isInstance(children.get(i))) {
+                return true;
             }
         }
 
-        return found;
+        return false;
     }
 
     public static ScopeNode getParentScope(Node node) {
@@ -79,56 +79,60 @@ public final class NodeTreeUtils {
         return null;
     }
 
+    /**
+     * @return The children of the given class. The list is immutable if there are none.
+     */
     public static <C extends Node> List<C> getChildren(InternalNode parent, Class<C> targetClass) {
-        List<C> filteredChildren = new ArrayList<C>();
+        List<Node> children = parent.getChildren();
+        List<C> filteredChildren = null;
 
-        for (Node child : parent.getChildren()) {
+        for (int i = 0; i < children.size(); i++) {
+            Node child = children.get(i);
             if (targetClass.isInstance(child)) {
+                if (filteredChildren == null) {
+                    filteredChildren = new ArrayList<C>();
+                }
                 //noinspection unchecked
                 filteredChildren.add((C) child);
             }
         }
 
-        return filteredChildren;
+        return (filteredChildren != null) ? filteredChildren : Collections.<C>emptyList();
     }
 
+    /**
+     * @return The removed children of the given class. The list is immutable if there are none.
+     * @see InternalNode#removeChildren(Class)
+     */
     public static <C extends Node> List<C> getAndRemoveChildren(InternalNode parent, Class<C> targetClass) {
-        List<C> filteredChildren = new ArrayList<C>();
-        List<Node> children = parent.getChildren();
-        boolean founded;
-
-        do {
-            founded = false;
-            for (int i = 0; i < children.size(); i++) {
-                Node child = children.get(i);
-                if (targetClass.isInstance(child)) {
-                    //noinspection unchecked
-                    filteredChildren.add((C) child);
-                    parent.removeChild(i);
-                    founded = true;
-                    break;
-                }
-            }
-        } while (founded);
-
-        return filteredChildren;
+        return parent.removeChildren(targetClass);
     }
 
+    /**
+     * @return The children with the given visibility. The list is immutable if there are none.
+     */
     public static List<Node> getChildrenWithVisibility(InternalNode parent, boolean visibility) {
-        List<Node> filteredChildren = new ArrayList<Node>();
+        List<Node> children = parent.getChildren();
+        List<Node> filteredChildren = null;
 
-        for (Node child : parent.getChildren()) {
+        for (int i = 0; i < children.size(); i++) {
+            Node child = children.get(i);
             if (child.isVisible() == visibility) {
-                //noinspection unchecked
+                if (filteredChildren == null) {
+                    filteredChildren = new ArrayList<Node>();
+                }
                 filteredChildren.add(child);
             }
         }
 
-        return filteredChildren;
+        return (filteredChildren != null) ? filteredChildren : Collections.<Node>emptyList();
     }
 
     public static <C extends Node> C getFirstChild(InternalNode parent, Class<C> targetClass) {
-        for (Node child : parent.getChildren()) {
+        List<Node> children = parent.getChildren();
+
+        for (int i = 0; i < children.size(); i++) {
+            Node child = children.get(i);
             if (targetClass.isInstance(child)) {
                 //noinspection unchecked
                 return (C) child;
@@ -147,6 +151,19 @@ public final class NodeTreeUtils {
         source.popChildIterator();
     }
 
+    /**
+     * @return The number of nodes in the tree rooted at the given node, including invisible nodes.
+     */
+    public static int countNodes(Node node) {
+        int count = 1;
+        if (node instanceof InternalNode) {
+            for (Node child : ((InternalNode) node).getChildren()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
     public static InternalNode filterLineBreaks(InternalNode node) {
         node.filter(new InclusiveNodeVisitor() {
             @Override
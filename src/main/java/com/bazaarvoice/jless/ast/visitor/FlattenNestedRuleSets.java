@@ -18,6 +18,7 @@
 
 package com.bazaarvoice.jless.ast.visitor;
 
+import com.bazaarvoice.jless.ast.node.LineBreakNode;
 import com.bazaarvoice.jless.ast.node.Node;
 import com.bazaarvoice.jless.ast.node.PropertyNode;
 import com.bazaarvoice.jless.ast.node.RuleSetNode;
@@ -90,6 +91,7 @@ public class FlattenNestedRuleSets extends InclusiveNodeVisitor {
         private final SelectorGroupNode _parentSelectorGroup;
         private final ScopeNode _parentScope;
 
+        private List<SelectorNode> _parentSelectors;
         private boolean _foundNestedRuleSets = false;
         private SelectorGroupNode _nestedSelectorGroup;
         private PropertyGroup _currentPropertyGroup = null;
@@ -114,27 +116,21 @@ public class FlattenNestedRuleSets extends InclusiveNodeVisitor {
         }
 
         @Override
-        public boolean enter(final SelectorNode selector) {
-            final RandomAccessListIterator<Node> selectorGroupIterator = selector.getParent().getLatestChildIterator();
+        public boolean enter(SelectorNode selector) {
+            RandomAccessListIterator<Node> selectorGroupIterator = selector.getParent().getLatestChildIterator();
 
             // Remove current selector node from its parent
             selectorGroupIterator.remove();
 
-            // Visit the parent selector group and clone its selector nodes
-            _parentSelectorGroup.traverse(new InclusiveNodeVisitor() {
-                @Override
-                public boolean exit(SelectorNode parentSelector) {
-                    SelectorNode parentSelectorClone = parentSelector.clone();
-
-                    // Add the current selector from the nested rule set to the cloned selector node from the parent.
-                    // SelectorNode listens for additions of other SelectorNodes, and will absorb its children properly.
-                    parentSelectorClone.addChild(selector.clone());
+            // The parent selectors don't change while this scope is visited, so they are only collected once
+            if (_parentSelectors == null) {
+                _parentSelectors = NodeTreeUtils.getChildren(_parentSelectorGroup, SelectorNode.class);
+            }
 
-                    // Add the new selector to the selector group
-                    selectorGroupIterator.add(parentSelectorClone);
-                    return true;
-                }
-            });
+            // Replace it with its combination with each of the parent selectors
+            for (SelectorNode parentSelector : _parentSelectors) {
+                selectorGroupIterator.add(parentSelector.combine(selector));
+            }
 
             return false;
         }
@@ -206,7 +202,7 @@ public class FlattenNestedRuleSets extends InclusiveNodeVisitor {
 
                 // Construct a simple rule set using the parent's selector
                 RuleSetNode propertyRuleSet = new RuleSetNode();
-                propertyRuleSet.addChild(NodeTreeUtils.filterLineBreaks(_parentSelectorGroup.clone()));
+                propertyRuleSet.addChild(_parentSelectorGroup.clone(LineBreakNode.class));
 
                 // Move all the properties into this new rule set
                 List<Node> propertyNodes = new ArrayList<Node>(_parentScope.getChildren().subList(group.getStart(), group.getEnd() + 1));
@@ -17,7 +17,9 @@
  */
 package com.bazaarvoice.jless.ast.visitor;
 
+import com.bazaarvoice.jless.ast.node.InternalNode;
 import com.bazaarvoice.jless.ast.node.MediaQueryNode;
+import com.bazaarvoice.jless.ast.node.Node;
 import com.bazaarvoice.jless.ast.node.RuleSetNode;
 import com.bazaarvoice.jless.ast.node.ScopeNode;
 import com.bazaarvoice.jless.ast.node.SelectorGroupNode;
@@ -27,6 +29,7 @@ import com.bazaarvoice.jless.ast.node.SpacingNode;
 import com.bazaarvoice.jless.ast.node.WhiteSpaceCollectionNode;
 import com.bazaarvoice.jless.ast.util.NodeTreeUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class NestedMediaQueries extends InclusiveNodeVisitor {
@@ -42,82 +45,124 @@ public class NestedMediaQueries extends InclusiveNodeVisitor {
      * If MediaQueryNode has other nodes except WhiteSpaceCollectionNode and
      * RuleSetNode than all of that will be wrapped with new RuleSetNode with
      * the same selectors as has input RuleSetNode
+     *
+     * Each scope is partitioned in a single pass and the nested selectors are built in one go, so the work
+     * stays linear in the number of media queries.
      */
     @Override
     public boolean enter(RuleSetNode ruleSetNode) {
 
-        ScopeNode scopeNode = NodeTreeUtils.getFirstChild(ruleSetNode, ScopeNode.class);
-        SelectorGroupNode selectorGroupNode = NodeTreeUtils.getFirstChild(ruleSetNode, SelectorGroupNode.class);
+        ScopeNode scopeNode = ruleSetNode.getScope();
+        SelectorGroupNode selectorGroupNode = ruleSetNode.getSelectorGroup();
 
-        if (selectorGroupNode == null) {
+        if (selectorGroupNode == null || scopeNode == null) {
             return true;
         }
 
-        List<SelectorNode> selectorNodes = NodeTreeUtils.getChildren(selectorGroupNode, SelectorNode.class);
+        List<MediaQueryNode> mediaQueryNodes = NodeTreeUtils.getAndRemoveChildren(scopeNode, MediaQueryNode.class);
 
-        if (selectorNodes.size() < 0) {
+        if (mediaQueryNodes.isEmpty()) {
             return true;
         }
 
-        List<MediaQueryNode> mediaQueryNodes = NodeTreeUtils.getAndRemoveChildren(scopeNode, MediaQueryNode.class);
+        List<List<SelectorSegmentNode>> outerSegments = getSegments(selectorGroupNode);
+        InternalNode parent = ruleSetNode.getParent();
 
         for (MediaQueryNode mediaQueryNode : mediaQueryNodes) {
-            ScopeNode mediaScopeNode = NodeTreeUtils.getFirstChild(mediaQueryNode, ScopeNode.class);
+            ScopeNode mediaScopeNode = mediaQueryNode.getScope();
 
             List<RuleSetNode> nestedRuleSets = NodeTreeUtils.getAndRemoveChildren(mediaScopeNode, RuleSetNode.class);
 
             // if scope node for media query has anything more but whitespaces and rule sets than wrap it with rule set with the same selector group as outer rule set has
-            if (mediaScopeNode.getChildren().size() > NodeTreeUtils.getChildren(mediaScopeNode, WhiteSpaceCollectionNode.class).size()) {
+            if (hasContent(mediaScopeNode)) {
                 RuleSetNode newRuleSetNode = new RuleSetNode();
                 ScopeNode newScopeNode = new ScopeNode();
                 newRuleSetNode.addChild(selectorGroupNode.clone());
                 newRuleSetNode.addChild(newScopeNode);
 
-                NodeTreeUtils.moveChildren(mediaScopeNode, newScopeNode);
+                newScopeNode.addChildren(NodeTreeUtils.getAndRemoveChildren(mediaScopeNode, Node.class));
 
-                mediaScopeNode.clearChildren();
                 mediaScopeNode.addChild(newRuleSetNode);
             }
 
             // adding outer selectors to every nested selectors
             for (RuleSetNode nestedRuleSet : nestedRuleSets) {
-                List<SelectorGroupNode> nestedSelectorGroupNodes = NodeTreeUtils.getChildren(nestedRuleSet, SelectorGroupNode.class);
-
-                for (SelectorGroupNode nestedSelectorGroupNode : nestedSelectorGroupNodes) {
-                    List<SelectorNode> nestedSelectorNodes = NodeTreeUtils.getAndRemoveChildren(nestedSelectorGroupNode, SelectorNode.class);
-                    NodeTreeUtils.getAndRemoveChildren(nestedSelectorGroupNode, SpacingNode.class);
-
-                    for (SelectorNode selectorNode : selectorNodes) {
-                        for (SelectorNode nestedSelectorNode : nestedSelectorNodes) {
-                            if (nestedSelectorNode.getChildren().get(0) != null) {
-                                if (nestedSelectorNode.getChildren().get(0) instanceof SelectorSegmentNode) {
-                                    SelectorSegmentNode selectorSegmentNode = (SelectorSegmentNode) nestedSelectorNode.getChildren().get(0);
-                                    selectorSegmentNode.setCombinator(" ");
-                                }
-                            }
-
-                            for (int j = selectorNode.getChildren().size() - 1; j >= 0; j--) {
-                                if (selectorNode.getChildren().get(j) instanceof SelectorSegmentNode) {
-                                    SelectorSegmentNode selectorSegmentNode = (SelectorSegmentNode) selectorNode.getChildren().get(j).clone();
-
-                                    nestedSelectorNode.addChild(0, selectorSegmentNode);
-                                }
-                            }
-
-                            nestedSelectorGroupNode.addChild(nestedSelectorNode);
-                            nestedSelectorGroupNode.addChild(new SpacingNode(" "));
-                        }
+                for (Node child : nestedRuleSet.getChildren()) {
+                    if (child instanceof SelectorGroupNode) {
+                        prefixSelectors((SelectorGroupNode) child, outerSegments);
                     }
                 }
                 mediaScopeNode.addChild(nestedRuleSet);
             }
 
-            if (ruleSetNode.getParent() != null) {
-                ruleSetNode.getParent().addChild(new SpacingNode("\n"));
-                ruleSetNode.getParent().addChild(mediaQueryNode);
+            if (parent != null) {
+                parent.addChild(new SpacingNode("\n"));
+                parent.addChild(mediaQueryNode);
             }
         }
 
         return true;
     }
+
+    /**
+     * @return The segments of each selector in the given group.
+     */
+    private static List<List<SelectorSegmentNode>> getSegments(SelectorGroupNode selectorGroupNode) {
+        List<List<SelectorSegmentNode>> segments = new ArrayList<List<SelectorSegmentNode>>();
+        for (Node selectorNode : selectorGroupNode.getChildren()) {
+            if (selectorNode instanceof SelectorNode) {
+                segments.add(NodeTreeUtils.getChildren((SelectorNode) selectorNode, SelectorSegmentNode.class));
+            }
+        }
+        return segments;
+    }
+
+    private static boolean hasContent(ScopeNode scopeNode) {
+        for (Node child : scopeNode.getChildren()) {
+            if (!(child instanceof WhiteSpaceCollectionNode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the selectors of the given group with a selector for every combination of an outer selector
+     * followed by one of the original selectors.
+     */
+    private static void prefixSelectors(SelectorGroupNode nestedSelectorGroupNode, List<List<SelectorSegmentNode>> outerSegments) {
+        List<SelectorNode> nestedSelectorNodes = NodeTreeUtils.getAndRemoveChildren(nestedSelectorGroupNode, SelectorNode.class);
+        NodeTreeUtils.getAndRemoveChildren(nestedSelectorGroupNode, SpacingNode.class);
+
+        for (SelectorNode nestedSelectorNode : nestedSelectorNodes) {
+            Node firstChild = nestedSelectorNode.getChildren().get(0);
+            if (firstChild instanceof SelectorSegmentNode) {
+                ((SelectorSegmentNode) firstChild).setCombinator(" ");
+            }
+        }
+
+        for (int i = 0; i < outerSegments.size(); i++) {
+            // the last outer selector takes over the original nested segments, the others get copies
+            boolean last = i == outerSegments.size() - 1;
+
+            for (SelectorNode nestedSelectorNode : nestedSelectorNodes) {
+                SelectorNode selectorNode = new SelectorNode();
+
+                for (SelectorSegmentNode segment : outerSegments.get(i)) {
+                    selectorNode.addChild(segment.clone());
+                }
+
+                if (last) {
+                    selectorNode.addChildren(NodeTreeUtils.getAndRemoveChildren(nestedSelectorNode, Node.class));
+                } else {
+                    for (Node child : nestedSelectorNode.getChildren()) {
+                        selectorNode.addChild(child.clone());
+                    }
+                }
+
+                nestedSelectorGroupNode.addChild(selectorNode);
+                nestedSelectorGroupNode.addChild(new SpacingNode(" "));
+            }
+        }
+    }
 }
@@ -0,0 +1,310 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.ast.visitor;
+
+import com.bazaarvoice.jless.ast.node.ExpressionGroupNode;
+import com.bazaarvoice.jless.ast.node.ExpressionNode;
+import com.bazaarvoice.jless.ast.node.ExpressionPhraseNode;
+import com.bazaarvoice.jless.ast.node.InternalNode;
+import com.bazaarvoice.jless.ast.node.LineBreakNode;
+import com.bazaarvoice.jless.ast.node.MultipleLineCommentNode;
+import com.bazaarvoice.jless.ast.node.Node;
+import com.bazaarvoice.jless.ast.node.PropertyNode;
+import com.bazaarvoice.jless.ast.node.RuleSetNode;
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import com.bazaarvoice.jless.ast.node.SelectorGroupNode;
+import com.bazaarvoice.jless.ast.node.SelectorNode;
+import com.bazaarvoice.jless.ast.node.SimpleNode;
+import com.bazaarvoice.jless.ast.node.SingleLineCommentNode;
+import com.bazaarvoice.jless.ast.node.SpacingNode;
+import com.bazaarvoice.jless.ast.node.WhiteSpaceCollectionNode;
+import com.bazaarvoice.jless.ast.util.NodeTreeUtils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This visitor makes the output smaller without changing its meaning. It expects the tree to have the shape of
+ * the final CSS, so it should run after {@link FlattenNestedRuleSets}.
+ *
+ * <ul>
+ *   <li>Rule sets without any declarations are removed.</li>
+ *   <li>Adjacent rule sets in the same scope with identical declarations are merged into the first one. Only
+ *   adjacent rule sets are merged, so the cascade order is preserved.</li>
+ *   <li>Colors with a three digit form are shortened, such as #ffcc00 to #fc0.</li>
+ *   <li>Zero lengths are printed without a unit, such as 0px as 0.</li>
+ * </ul>
+ *
+ * Example input:
+ *   .cat { color: #ff0000; }
+ *   .dog { color: #ff0000; }
+ *   .bird { margin: 0px; }
+ *   .fish { }
+ *
+ * Resulting output:
+ *   .cat, .dog { color: #f00; }
+ *   .bird { margin: 0; }
+ *
+ * Colors and lengths are only rewritten where they appear directly in a property value. Lengths in flex
+ * properties keep their unit, since some browsers don't accept a unitless flex basis. Rule sets with pseudo
+ * classes or elements from beyond CSS 2.1 (including vendor specific ones) are never merged, since browsers drop
+ * a whole rule set when they don't recognize one of its selectors. Unless the output is compressed, comments are
+ * printed, so rule sets holding comments are neither removed nor merged, and comments separate rule sets.
+ */
+public class OptimizeRuleSets extends InclusiveNodeVisitor {
+
+    private static final Pattern SHORT_COLOR = Pattern.compile("#([0-9a-fA-F])\\1([0-9a-fA-F])\\2([0-9a-fA-F])\\3");
+    private static final Pattern ZERO_LENGTH = Pattern.compile(
+            "-?(0+|0*\\.0+)(px|em|ex|ch|rem|vw|vh|vmin|vmax|cm|mm|in|pt|pc)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PSEUDO_SELECTOR = Pattern.compile("::?([-\\w]+)");
+    private static final Set<String> CSS2_PSEUDO_SELECTORS = new HashSet<String>(Arrays.asList(
+            "link", "visited", "hover", "active", "focus", "first-child", "first-letter", "first-line", "before", "after",
+            "lang"));
+    private static final String FLEX_PROPERTY = "flex";
+
+    private final boolean _compress;
+
+    /**
+     * @param compress Whether the output is printed compressed, which leaves out comments.
+     */
+    public OptimizeRuleSets(boolean compress) {
+        _compress = compress;
+    }
+
+    /**
+     * Rule sets are merged and removed on the way out, so that nested scopes have already been reduced.
+     */
+    @Override
+    public boolean exit(ScopeNode scope) {
+        RuleSetNode previous = null;
+        String previousDeclarations = null;
+
+        List<Node> children = scope.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            Node child = children.get(i);
+
+            // Invisible nodes and whitespace aren't printed, so they don't separate rule sets
+            if (!child.isVisible() || isWhiteSpace(child)) {
+                continue;
+            }
+
+            if (!(child instanceof RuleSetNode)) {
+                previous = null;
+                continue;
+            }
+
+            RuleSetNode ruleSet = (RuleSetNode) child;
+            if (isEmpty(ruleSet.getScope())) {
+                scope.removeChild(i--);
+                continue;
+            }
+
+            String declarations = getDeclarations(ruleSet);
+            if (declarations != null && declarations.equals(previousDeclarations)) {
+                moveSelectors(ruleSet.getSelectorGroup(), previous.getSelectorGroup());
+                scope.removeChild(i--);
+                continue;
+            }
+
+            previous = ruleSet;
+            previousDeclarations = declarations;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean visit(SimpleNode node) {
+        String value = node.getValue();
+        String optimizedValue = null;
+
+        if (SHORT_COLOR.matcher(value).matches()) {
+            optimizedValue = "#" + value.charAt(1) + value.charAt(3) + value.charAt(5);
+        } else if (ZERO_LENGTH.matcher(value).matches()) {
+            optimizedValue = "0";
+        }
+
+        if (optimizedValue != null) {
+            PropertyNode property = getProperty(node);
+            if (property != null && !(optimizedValue.equals("0") && property.getName().contains(FLEX_PROPERTY))) {
+                node.getParent().getLatestChildIterator().set(new SimpleNode(optimizedValue));
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean visitInvisible(Node node) {
+        return false;
+    }
+
+    /**
+     * @return The property whose value the given node is, or null if it is part of anything else (such as the
+     * arguments of a function).
+     */
+    private static PropertyNode getProperty(SimpleNode node) {
+        InternalNode expression = node.getParent();
+        if (!(expression instanceof ExpressionNode)) {
+            return null;
+        }
+        InternalNode phrase = expression.getParent();
+        if (!(phrase instanceof ExpressionPhraseNode)) {
+            return null;
+        }
+        InternalNode group = phrase.getParent();
+        if (!(group instanceof ExpressionGroupNode) || !(group.getParent() instanceof PropertyNode)) {
+            return null;
+        }
+        return (PropertyNode) group.getParent();
+    }
+
+    /**
+     * @return Whether the given node prints nothing but whitespace. Comments are only left out of compressed output.
+     */
+    private boolean isWhiteSpace(Node node) {
+        if (!_compress && hasComment(node)) {
+            return false;
+        }
+        return node instanceof WhiteSpaceCollectionNode || node instanceof SpacingNode || node instanceof LineBreakNode
+                || node instanceof MultipleLineCommentNode || node instanceof SingleLineCommentNode;
+    }
+
+    /**
+     * @return Whether the given node holds a comment that is printed when the output isn't compressed. The parser
+     * keeps comments as the text of spacing nodes.
+     */
+    private static boolean hasComment(Node node) {
+        if (node instanceof SpacingNode) {
+            return ((SpacingNode) node).getValue().trim().length() > 0;
+        }
+        if (node instanceof MultipleLineCommentNode) {
+            return true;
+        }
+        if (node instanceof InternalNode) {
+            for (Node child : ((InternalNode) node).getChildren()) {
+                if (child.isVisible() && hasComment(child)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isEmpty(ScopeNode scope) {
+        for (Node child : scope.getChildren()) {
+            if (child.isVisible() && !isWhiteSpace(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The printed declarations of the given rule set, or null if it can't be merged with another.
+     */
+    private String getDeclarations(RuleSetNode ruleSet) {
+        SelectorGroupNode selectorGroup = ruleSet.getSelectorGroup();
+        ScopeNode scope = ruleSet.getScope();
+
+        // Rule sets that only hold flattened nested rule sets have no selectors of their own
+        if (selectorGroup == null || !selectorGroup.isVisible() || !scope.isBracketsDisplayed()) {
+            return null;
+        }
+
+        for (Node selector : selectorGroup.getChildren()) {
+            if (selector instanceof SelectorNode && !isWidelySupported((SelectorNode) selector)) {
+                return null;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Node child : scope.getChildren()) {
+            if (!child.isVisible() || isWhiteSpace(child)) {
+                continue;
+            }
+            if (!(child instanceof PropertyNode)) {
+                return null;
+            }
+
+            // Print each declaration on its own, so that the separators can't be confused with the values
+            DeclarationPrinter printer = new DeclarationPrinter();
+            child.traverse(printer);
+            sb.append(printer).append(';');
+            printer.recycle();
+        }
+
+        return sb.toString();
+    }
+
+    private static boolean isWidelySupported(SelectorNode selector) {
+        Matcher matcher = PSEUDO_SELECTOR.matcher(selector.getSelectorText());
+        while (matcher.find()) {
+            if (matcher.group().startsWith("::") || !CSS2_PSEUDO_SELECTORS.contains(matcher.group(1).toLowerCase())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the selectors of the source group after the last selector of the destination group, which keeps any
+     * whitespace that follows the destination's selectors at the end. Selectors that the destination already
+     * has are left out.
+     */
+    private static void moveSelectors(SelectorGroupNode source, SelectorGroupNode destination) {
+        Set<String> selectorTexts = new HashSet<String>();
+        List<Node> destinationChildren = destination.getChildren();
+        int index = destinationChildren.size();
+        for (int i = 0; i < destinationChildren.size(); i++) {
+            if (destinationChildren.get(i) instanceof SelectorNode) {
+                selectorTexts.add(((SelectorNode) destinationChildren.get(i)).getSelectorText());
+                index = i + 1;
+            }
+        }
+
+        for (SelectorNode selector : NodeTreeUtils.getAndRemoveChildren(source, SelectorNode.class)) {
+            if (!selectorTexts.add(selector.getSelectorText())) {
+                continue;
+            }
+            destination.addChild(index++, new SpacingNode(" "));
+            destination.addChild(index++, selector);
+        }
+    }
+
+    /**
+     * Prints declarations for comparison. The tree may still change, so variable references are looked up
+     * without being bound to their definitions.
+     */
+    private static class DeclarationPrinter extends Printer {
+
+        private DeclarationPrinter() {
+            super(true);
+        }
+
+        @Override
+        protected boolean isResolvingReferences() {
+            return false;
+        }
+    }
+}
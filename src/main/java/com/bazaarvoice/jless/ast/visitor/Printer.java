@@ -24,6 +24,7 @@ import com.bazaarvoice.jless.ast.node.ExpressionNode;
 import com.bazaarvoice.jless.ast.node.ExpressionPhraseNode;
 import com.bazaarvoice.jless.ast.node.FilterArgumentNode;
 import com.bazaarvoice.jless.ast.node.FunctionNode;
+import com.bazaarvoice.jless.ast.node.InternalNode;
 import com.bazaarvoice.jless.ast.node.LineBreakNode;
 import com.bazaarvoice.jless.ast.node.MediaTypeRestriction;
 import com.bazaarvoice.jless.ast.node.MultipleLineCommentNode;
@@ -40,27 +41,78 @@ import com.bazaarvoice.jless.ast.node.VariableDefinitionNode;
 import com.bazaarvoice.jless.ast.node.VariableReferenceNode;
 import com.bazaarvoice.jless.ast.util.NodeTreeUtils;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Prints the visited nodes as text. By default, all output is collected in memory and returned by {@link #toString}.
+ * If an output {@link Writer} is supplied, the output is instead written to it in chunks as the tree is visited,
+ * and {@link #flush} must be called once the traversal is complete.
+ *
+ * Large trees may be printed in parts by separate printers, which are then appended in order to the printer
+ * for the complete output. See {@link #forPart} for details.
+ */
 public class Printer extends InclusiveNodeVisitor {
 
-    private static final int INDENT_STEP = 4;
     private static final int COMPRESSED_LINE_BREAK_POSITION = 4000;
+    private static final int OUTPUT_CHUNK_SIZE = 8192;
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final int MAXIMUM_RECYCLED_CAPACITY = 1 << 18;
     private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final ThreadLocal<StringBuilder> RECYCLED_BUFFER = new ThreadLocal<StringBuilder>();
 
     private boolean _compress;
+    private Writer _out;
+    private char[] _chunk;
 
-    private StringBuilder _sb = new StringBuilder();
-    private int _indent = 0;
-    private boolean _lastPrintedIndent = false;
+    private StringBuilder _sb;
+    private int _flushedLength = 0;
+    private IOException _outputException;
     private int _lastCompressedLineBreak = 0;
+    private int _resolvedReferenceCount = 0;
+    private List<Integer> _compressedLineBreakPositions;
+    private InternalNode _rangeParent;
+    private int _rangeIndex;
 
     public Printer() {
         this(false);
     }
 
     public Printer(boolean compress) {
+        this(compress, null);
+    }
+
+    /**
+     * @param expectedLength The expected length of the output, which the output buffer is sized for up front.
+     */
+    public Printer(boolean compress, int expectedLength) {
+        this(compress, null, expectedLength);
+    }
+
+    public Printer(boolean compress, Writer out) {
+        // Output is written once a chunk is complete, so the buffer only needs to hold a chunk and the last print
+        this(compress, out, out != null ? OUTPUT_CHUNK_SIZE * 2 : DEFAULT_CAPACITY);
+    }
+
+    private Printer(boolean compress, Writer out, int capacity) {
         _compress = compress;
+        _out = out;
+        _chunk = out != null ? new char[OUTPUT_CHUNK_SIZE] : null;
+        _sb = takeRecycledBuffer(capacity);
+    }
+
+    /**
+     * Creates a printer for one part of a larger output, which is added to the printer for the complete output
+     * with {@link #append}. The line breaks that are periodically added to compressed output depend on the
+     * position in the complete output, so this printer only records where they may be needed, and they are
+     * added once the part is appended.
+     */
+    public static Printer forPart(boolean compress) {
+        Printer printer = new Printer(compress);
+        printer._compressedLineBreakPositions = new ArrayList<Integer>();
+        return printer;
     }
     
     // Node output
@@ -90,7 +142,7 @@ public class Printer extends InclusiveNodeVisitor {
 
     @Override
     public boolean exit(ExpressionGroupNode node) {
-        if (NodeTreeUtils.parentHasNext(node)) {
+        if (parentHasNext(node)) {
             print(',').printOptional(' ');
         }
         return super.exit(node);
@@ -98,7 +150,7 @@ public class Printer extends InclusiveNodeVisitor {
 
     @Override
     public boolean exit(ExpressionNode node) {
-        if (NodeTreeUtils.parentHasNext(node)) {
+        if (parentHasNext(node)) {
             print(' ');
         }
         return super.exit(node);
@@ -106,7 +158,7 @@ public class Printer extends InclusiveNodeVisitor {
 
     @Override
     public boolean exit(ExpressionPhraseNode node) {
-        if (NodeTreeUtils.parentHasNext(node)) {
+        if (parentHasNext(node)) {
             print(',');
         }
         return super.exit(node);
@@ -126,7 +178,7 @@ public class Printer extends InclusiveNodeVisitor {
 
     @Override
     public boolean exit(FilterArgumentNode node) {
-        if (NodeTreeUtils.parentHasNext(node)) {
+        if (parentHasNext(node)) {
             print(',').printOptional(' ');
         }
         return super.exit(node);
@@ -156,7 +208,7 @@ public class Printer extends InclusiveNodeVisitor {
 
     @Override
     public boolean exit(PropertyNode node) {
-        if (NodeTreeUtils.parentHasNext(node)) {
+        if (parentHasNext(node)) {
             print(";");
         } else {
             printOptional(";");
@@ -168,7 +220,7 @@ public class Printer extends InclusiveNodeVisitor {
     public boolean enter(RuleSetNode ruleSet) {
         if (_compress) {
             // Check if the inner scope contains nodes
-            ScopeNode scope = NodeTreeUtils.getFirstChild(ruleSet, ScopeNode.class);
+            ScopeNode scope = ruleSet.getScope();
             return !scope.getChildren().isEmpty();
         }
         return super.enter(ruleSet);
@@ -178,12 +230,6 @@ public class Printer extends InclusiveNodeVisitor {
     public boolean enter(ScopeNode node) {
         if (node.getParent() != null && node.isBracketsDisplayed()) {
             print('{');
-            List<Node> children = node.getChildren();
-            if (children.isEmpty()) {
-                // do nothing
-            } else {
-                addIndent();
-            }
         }
         return super.enter(node);
     }
@@ -191,19 +237,10 @@ public class Printer extends InclusiveNodeVisitor {
     @Override
     public boolean exit(ScopeNode node) {
         if (node.getParent() != null && node.isBracketsDisplayed()) {
-            List<Node> children = node.getChildren();
-            if (children.isEmpty()) {
-                // do nothing
-            } else {
-                removeIndent();
-            }
-            deleteIndent().print('}');
+            print('}');
 
-            // Some editors and version control systems don't like extremely long lines, so add
-            // line breaks every so often when compressing. 
-            if (_compress && _sb.length() - _lastCompressedLineBreak > COMPRESSED_LINE_BREAK_POSITION) {
-                printLine();
-                _lastCompressedLineBreak = _sb.length();
+            if (_compress) {
+                breakCompressedLine();
             }
         }
         return super.exit(node);
@@ -250,7 +287,7 @@ public class Printer extends InclusiveNodeVisitor {
     @Override
     public boolean exit(VariableDefinitionNode node) {
         print(";");
-        if (node.getParent().getChildren().size() > 1 && NodeTreeUtils.parentHasNext(node)) {
+        if (node.getParent().getChildren().size() > 1 && parentHasNext(node)) {
             print(' ');
         }
         return super.exit(node);
@@ -258,6 +295,9 @@ public class Printer extends InclusiveNodeVisitor {
 
     @Override
     public boolean visit(VariableReferenceNode node) {
+        if (isResolvingReferences() && !node.isResolved() && node.resolve()) {
+            _resolvedReferenceCount++;
+        }
         print(node.getValue());
         return super.visit(node);
     }
@@ -268,17 +308,94 @@ public class Printer extends InclusiveNodeVisitor {
         return false;
     }
 
+    /**
+     * Prints a range of the given node's children the same way as they are printed when the whole node is
+     * traversed. The node itself is not printed, so this is meant for the root scope, which has no brackets.
+     * Separate printers may print distinct ranges of the same node at the same time.
+     */
+    public Printer printChildren(InternalNode parent, int start, int end) {
+        _rangeParent = parent;
+        List<Node> children = parent.getChildren();
+        for (_rangeIndex = start; _rangeIndex < end; _rangeIndex++) {
+            children.get(_rangeIndex).traverse(this);
+        }
+        _rangeParent = null;
+        return this;
+    }
+
+    /**
+     * Adds the output of a printer created by {@link #forPart} to this printer's output.
+     */
+    public Printer append(Printer part) {
+        StringBuilder output = part._sb;
+        int appended = 0;
+        for (int position : part._compressedLineBreakPositions) {
+            print(output, appended, position);
+            appended = position;
+            breakCompressedLine();
+        }
+        print(output, appended, output.length());
+
+        _resolvedReferenceCount += part._resolvedReferenceCount;
+        return this;
+    }
+
+    /**
+     * Children that are printed by {@link #printChildren} are not being iterated by their parent, so their
+     * position is checked here instead.
+     */
+    private boolean parentHasNext(Node node) {
+        if (_rangeParent != null && node.getParent() == _rangeParent) {
+            return _rangeIndex < _rangeParent.getChildren().size() - 1;
+        }
+        return NodeTreeUtils.parentHasNext(node);
+    }
+
+    /**
+     * Some editors and version control systems don't like extremely long lines, so add line breaks every so often
+     * when compressing.
+     */
+    private void breakCompressedLine() {
+        if (_compressedLineBreakPositions != null) {
+            _compressedLineBreakPositions.add(length());
+        } else if (length() - _lastCompressedLineBreak > COMPRESSED_LINE_BREAK_POSITION) {
+            printLine();
+            _lastCompressedLineBreak = length();
+        }
+    }
+
+    /**
+     * Printing normally happens once the tree has reached its final shape, so each variable reference is bound to
+     * its definition when first printed. Printers that may run while the tree is still being built must not do so.
+     */
+    protected boolean isResolvingReferences() {
+        return true;
+    }
+
+    /**
+     * @return The number of variable references that were bound to their definitions by this printer.
+     */
+    public int getResolvedReferenceCount() {
+        return _resolvedReferenceCount;
+    }
+
     // Printing
 
     private Printer print(String s) {
+        flushChunk();
         _sb.append(s);
-        _lastPrintedIndent = false;
         return this;
     }
 
-    private Printer print(Character c) {
+    private Printer print(char c) {
+        flushChunk();
         _sb.append(c);
-        _lastPrintedIndent = false;
+        return this;
+    }
+
+    private Printer print(CharSequence s, int start, int end) {
+        flushChunk();
+        _sb.append(s, start, end);
         return this;
     }
 
@@ -289,44 +406,101 @@ public class Printer extends InclusiveNodeVisitor {
         return this;
     }
 
-    private Printer printOptional(Character c) {
+    private Printer printOptional(char c) {
         if (!_compress) {
             print(c);
         }
         return this;
     }
 
-    private Printer printIndent() {
-        for (int i = 0; i < _indent; i++) {
-            _sb.append(' ');
-        }
-        _lastPrintedIndent = true;
-        return this;
-    }
-
     private Printer printLine() {
+        flushChunk();
         _sb.append(LINE_SEPARATOR);
-        _lastPrintedIndent = false;
         return this;
     }
 
-    // Indentation
+    // Output
 
-    private Printer addIndent() {
-        _indent += INDENT_STEP;
-        return this;
+    private int length() {
+        return _flushedLength + _sb.length();
     }
 
-    private Printer removeIndent() {
-        _indent -= INDENT_STEP;
-        return this;
+    /**
+     * Writes the buffered output once it reaches the chunk size. This is only called before new text is appended.
+     */
+    private void flushChunk() {
+        if (_out != null && _sb.length() >= OUTPUT_CHUNK_SIZE) {
+            writeBuffer();
+        }
     }
 
-    private Printer deleteIndent() {
-        if (_lastPrintedIndent) {
-            _sb.delete(_sb.length() - INDENT_STEP, _sb.length());
+    /**
+     * Copies the buffered output into a reused array, so that writing it doesn't allocate a string for each chunk.
+     */
+    private void writeBuffer() {
+        if (_outputException == null) {
+            try {
+                for (int start = 0; start < _sb.length(); start += _chunk.length) {
+                    int end = Math.min(start + _chunk.length, _sb.length());
+                    _sb.getChars(start, end, _chunk, 0);
+                    _out.write(_chunk, 0, end - start);
+                }
+            } catch (IOException e) {
+                // Remember the failure, so it can be reported once the traversal is complete
+                _outputException = e;
+            }
         }
-        return this;
+        _flushedLength += _sb.length();
+        _sb.setLength(0);
+    }
+
+    /**
+     * Writes any remaining output to the output writer.
+     * @throws IOException If the output writer failed at any point during printing.
+     */
+    public void flush() throws IOException {
+        if (_out == null) {
+            return;
+        }
+
+        writeBuffer();
+
+        if (_outputException != null) {
+            throw _outputException;
+        }
+
+        _out.flush();
+    }
+
+    /**
+     * Hands this printer's output buffer to the next printer that is created on the current thread, so that
+     * printing many small or repeated outputs doesn't allocate a new buffer each time. Overly large buffers are
+     * left to the garbage collector instead. The printer must not be used once it has been recycled.
+     */
+    public void recycle() {
+        if (_sb.capacity() <= MAXIMUM_RECYCLED_CAPACITY) {
+            _sb.setLength(0);
+            StringBuilder recycled = RECYCLED_BUFFER.get();
+            if (recycled == null || recycled.capacity() < _sb.capacity()) {
+                RECYCLED_BUFFER.set(_sb);
+            }
+        }
+        _sb = null;
+    }
+
+    /**
+     * Buffers are taken away from the thread while in use, so printers that are nested in another printer's
+     * traversal never share a buffer.
+     */
+    private static StringBuilder takeRecycledBuffer(int capacity) {
+        StringBuilder sb = RECYCLED_BUFFER.get();
+        if (sb == null) {
+            return new StringBuilder(Math.max(capacity, DEFAULT_CAPACITY));
+        }
+
+        RECYCLED_BUFFER.set(null);
+        sb.ensureCapacity(capacity);
+        return sb;
     }
 
     @Override
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.parser;
+
+import org.parboiled.Rule;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.errors.ActionError;
+import org.parboiled.errors.ParseError;
+import org.parboiled.parserunners.AbstractParseRunner;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.parserunners.ErrorLocatingParseRunner;
+import org.parboiled.parserunners.ErrorReportingParseRunner;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.ParsingResult;
+
+/**
+ * Runs the parser like {@link ReportingParseRunner}, but also reports errors raised by the parser's actions
+ * (such as references to undefined mixins or missing imports). The reporting runner expects each failure to be
+ * caused by invalid input, so it is only used to locate the error when no action has failed.
+ *
+ * Valid input is parsed once with the cheapest runner. Only a failed parse is run again to locate and describe
+ * the error, which takes two further runs. The state that the parser collected during a run is reset before the
+ * next one, so each run sees the input as the first one did.
+ */
+public class DocumentParseRunner<V> extends AbstractParseRunner<V> {
+
+    private final Parser _parser;
+
+    /**
+     * @param parser The parser instance that built the rule.
+     */
+    public DocumentParseRunner(Rule rule, Parser parser) {
+        super(rule);
+        _parser = parser;
+    }
+
+    @Override
+    public ParsingResult<V> run(InputBuffer inputBuffer) {
+        ParsingResult<V> result = new BasicParseRunner<V>(getRootMatcher()).withValueStack(getValueStack()).run(inputBuffer);
+
+        if (result.matched) {
+            return result;
+        }
+
+        for (ParseError error : result.parseErrors) {
+            if (error instanceof ActionError) {
+                return result;
+            }
+        }
+
+        // Locate and report the error like the reporting runner does, without repeating the failed basic run first
+        resetRun();
+        result = new ErrorLocatingParseRunner<V>(getRootMatcher()).withValueStack(getValueStack()).run(inputBuffer);
+
+        if (result.matched || result.parseErrors.isEmpty() || result.parseErrors.get(0) instanceof ActionError) {
+            return result;
+        }
+
+        resetRun();
+        return new ErrorReportingParseRunner<V>(getRootMatcher(), result.parseErrors.get(0).getStartIndex())
+                .withParseErrors(getParseErrors())
+                .withValueStack(getValueStack())
+                .run(inputBuffer);
+    }
+
+    private void resetRun() {
+        resetValueStack();
+        _parser.resetMixinExpansionCount();
+        // Files imported by the previous run would otherwise be left out as already imported
+        if (_parser.getImportContext() != null) {
+            _parser.setImportContext(_parser.getImportContext().restart());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.parser;
+
+import com.bazaarvoice.jless.ast.node.Node;
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import com.bazaarvoice.jless.exception.IllegalImportException;
+import org.parboiled.Rule;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.errors.ErrorUtils;
+import org.parboiled.support.DefaultValueStack;
+import org.parboiled.support.ParsingResult;
+import org.parboiled.support.ValueStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Locates imported files and holds the parsed scope of each one, so that a file imported by many documents is
+ * only read and parsed once (and again whenever the modification time of the file or one of its own imports
+ * changes). The cached scopes are never
+ * attached to a document's tree or otherwise modified, so each import receives a clone of the cached scope.
+ *
+ * Imported files are parsed on their own, so they can only use variables and mixins that they define or import
+ * themselves.
+ *
+ * Files are parsed without holding a lock on the whole cache, so only callers that need the same file wait for
+ * it to be parsed. A thread that is parsing an imported file doesn't wait for another thread, since that thread
+ * may be waiting for the file that it is parsing. It parses the requested file again instead.
+ */
+public final class ImportCache {
+
+    private static final String LESS_EXTENSION = ".less";
+
+    private final ParserPool _parserPool;
+    private final List<File> _importPaths;
+    private final ConcurrentMap<File, FutureTask<Entry>> _entries = new ConcurrentHashMap<File, FutureTask<Entry>>();
+
+    public ImportCache(ParserPool parserPool, List<File> importPaths) {
+        _parserPool = parserPool;
+        _importPaths = new ArrayList<File>(importPaths);
+    }
+
+    /**
+     * @param directory The directory of the document, or null if it is not known.
+     * @return The import state for a new document.
+     */
+    public ImportContext createContext(File directory) {
+        return new ImportContext(this, null, directory, null, new HashSet<File>());
+    }
+
+    /**
+     * Searches the directory of the importing file first, followed by each import path. Paths without an
+     * extension may also refer to LESS files.
+     * @return The located file, or null if it could not be found.
+     */
+    File find(String path, File directory) {
+        List<File> directories = new ArrayList<File>(_importPaths.size() + 1);
+        if (directory != null) {
+            directories.add(directory);
+        }
+        directories.addAll(_importPaths);
+
+        for (File searchDirectory : directories) {
+            File file = find(new File(path).isAbsolute() ? new File(path) : new File(searchDirectory, path));
+            if (file != null) {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    private static File find(File file) {
+        if (file.isFile()) {
+            return file;
+        }
+        File lessFile = new File(file.getPath() + LESS_EXTENSION);
+        if (!file.getName().contains(".") && lessFile.isFile()) {
+            return lessFile;
+        }
+        return null;
+    }
+
+    /**
+     * @return The cached entry for the given file, which is parsed if it has not been seen before or has changed.
+     */
+    Entry getEntry(final File file, final ImportContext context, final String path) {
+        while (true) {
+            FutureTask<Entry> task = _entries.get(file);
+
+            if (task != null && !task.isDone() && context.isImport()) {
+                return parse(file, context, path);
+            }
+
+            if (task != null) {
+                Entry entry = getEntry(file, task);
+                if (entry.isCurrent()) {
+                    return entry;
+                }
+            }
+
+            FutureTask<Entry> parseTask = new FutureTask<Entry>(new Callable<Entry>() {
+                @Override
+                public Entry call() {
+                    return parse(file, context, path);
+                }
+            });
+
+            // Another caller may have started parsing the file in the meantime, in which case its entry is used
+            boolean added = (task == null) ? _entries.putIfAbsent(file, parseTask) == null : _entries.replace(file, task, parseTask);
+            if (added) {
+                parseTask.run();
+                return getEntry(file, parseTask);
+            }
+        }
+    }
+
+    /**
+     * Waits for the given task to parse the file. Failed tasks are removed, so the file is parsed again when it is
+     * next requested.
+     */
+    private Entry getEntry(File file, FutureTask<Entry> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + file + " to be parsed.", e);
+        } catch (ExecutionException e) {
+            _entries.remove(file, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private Entry parse(File file, ImportContext importingContext, String path) {
+        // Record the time before reading, so that a change made while reading is noticed later
+        long lastModified = file.lastModified();
+
+        InputBuffer input;
+        try {
+            input = InputBuffers.read(file);
+        } catch (IOException e) {
+            throw new IllegalImportException(path, e.getMessage());
+        }
+
+        // The importing document's parser is still running, so the import needs a parser of its own
+        Rule document = _parserPool.acquire();
+        Parser parser = _parserPool.getParser(document);
+        ValueStack<Node> stack = new DefaultValueStack<Node>();
+        ParsingResult<Node> result = null;
+        ImportContext context;
+        try {
+            parser.setImportContext(new ImportContext(this, file, file.getParentFile(), importingContext, new HashSet<File>()));
+            result = new DocumentParseRunner<Node>(document, parser).withValueStack(stack).run(input);
+            // The runner replaces the context if it parses the file again
+            context = parser.getImportContext();
+        } finally {
+            parser.setImportContext(null);
+            if (result != null) {
+                _parserPool.release(document);
+            } else {
+                _parserPool.discard(document);
+            }
+        }
+
+        if (result.hasErrors()) {
+            throw new IllegalImportException(path, "an error occurred while parsing " + file + ":\n" +
+                    ErrorUtils.printParseErrors(result));
+        }
+
+        Map<File, Long> modificationTimes = new HashMap<File, Long>();
+        for (Entry importedEntry : context.getImportedEntries()) {
+            modificationTimes.putAll(importedEntry._modificationTimes);
+        }
+        modificationTimes.put(file, lastModified);
+
+        return new Entry((ScopeNode) stack.pop(), modificationTimes, context.getImportedFiles());
+    }
+
+    static final class Entry {
+        private final ScopeNode _scope;
+        private final Map<File, Long> _modificationTimes;
+        private final Set<File> _importedFiles;
+
+        private Entry(ScopeNode scope, Map<File, Long> modificationTimes, Set<File> importedFiles) {
+            _scope = scope;
+            _modificationTimes = modificationTimes;
+            _importedFiles = Collections.unmodifiableSet(importedFiles);
+        }
+
+        /**
+         * @return Whether neither the file nor any of its imports have changed since it was parsed.
+         */
+        private boolean isCurrent() {
+            for (Map.Entry<File, Long> modificationTime : _modificationTimes.entrySet()) {
+                if (modificationTime.getKey().lastModified() != modificationTime.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return A copy of the imported scope that may be attached to a document.
+         */
+        ScopeNode cloneScope() {
+            return _scope.clone();
+        }
+
+        /**
+         * @return The files that were imported while parsing this file, directly or indirectly.
+         */
+        Set<File> getImportedFiles() {
+            return _importedFiles;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.parser;
+
+import com.bazaarvoice.jless.ast.node.InternalNode;
+import com.bazaarvoice.jless.ast.node.Node;
+import com.bazaarvoice.jless.ast.node.PlaceholderNode;
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+import com.bazaarvoice.jless.exception.IllegalImportException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks the imports of a single document while it is parsed. Each file is only imported once per document,
+ * even if it is requested again (directly or by another imported file).
+ *
+ * The cached scope of an imported file contains the content of the files it imports in turn, which the document
+ * may already have imported on its own. That content is enclosed in boundary nodes, so it can be left out of the
+ * copy that is handed to the document. The boundaries are only kept in the scopes of imported files.
+ */
+public final class ImportContext {
+
+    private final ImportCache _cache;
+    private final File _file;
+    private final File _directory;
+    private final ImportContext _importingContext;
+    private final Set<File> _importedFiles;
+    private final List<ImportCache.Entry> _importedEntries = new ArrayList<ImportCache.Entry>();
+
+    /**
+     * @param file The imported file being parsed, or null for the document itself.
+     * @param directory The directory that relative imports are resolved against, or null if it is not known.
+     * @param importingContext The context of the document or file that imported this file, if any.
+     */
+    ImportContext(ImportCache cache, File file, File directory, ImportContext importingContext, Set<File> importedFiles) {
+        _cache = cache;
+        _file = file;
+        _directory = directory;
+        _importingContext = importingContext;
+        _importedFiles = importedFiles;
+    }
+
+    /**
+     * @return A context for the same document or file that hasn't imported anything yet, for parsing it again.
+     */
+    ImportContext restart() {
+        return new ImportContext(_cache, _file, _directory, _importingContext, new HashSet<File>());
+    }
+
+    /**
+     * @return Whether this context belongs to an imported file rather than to the document itself.
+     */
+    boolean isImport() {
+        return _file != null;
+    }
+
+    /**
+     * @return The canonical files imported so far, directly or by other imported files.
+     */
+    public Set<File> getImportedFiles() {
+        return _importedFiles;
+    }
+
+    List<ImportCache.Entry> getImportedEntries() {
+        return _importedEntries;
+    }
+
+    /**
+     * @return A copy of the imported file's scope, or null if the file has already been imported by this document.
+     */
+    ScopeNode importScope(String path) {
+        File file = _cache.find(path, _directory);
+        if (file == null) {
+            throw new IllegalImportException(path, "the file could not be found.");
+        }
+
+        try {
+            file = file.getCanonicalFile();
+        } catch (IOException e) {
+            throw new IllegalImportException(path, e.getMessage());
+        }
+
+        if (_importedFiles.contains(file)) {
+            return null;
+        }
+
+        for (ImportContext context = this; context != null; context = context._importingContext) {
+            if (file.equals(context._file)) {
+                throw new IllegalImportException(path, "the file imports itself.");
+            }
+        }
+
+        ImportCache.Entry entry = _cache.getEntry(file, this, path);
+        _importedFiles.add(file);
+        _importedEntries.add(entry);
+
+        boolean keepBoundaries = _file != null;
+        ScopeNode scope = entry.cloneScope();
+        removeImportedContent(scope, keepBoundaries);
+        _importedFiles.addAll(entry.getImportedFiles());
+
+        if (keepBoundaries) {
+            scope.addChild(0, new ImportBoundaryNode(file, true));
+            scope.addChild(new ImportBoundaryNode(file, false));
+        }
+
+        return scope;
+    }
+
+    /**
+     * Removes the content of files that were already imported, and records the files whose content is kept.
+     */
+    private void removeImportedContent(InternalNode node, boolean keepBoundaries) {
+        List<Node> children = node.getChildren();
+        int i = 0;
+        while (i < children.size()) {
+            Node child = children.get(i);
+
+            if (child instanceof ImportBoundaryNode) {
+                ImportBoundaryNode boundary = (ImportBoundaryNode) child;
+                if (boundary._start && !_importedFiles.add(boundary._file)) {
+                    // Remove from the end of the content, so that fewer children have to be shifted
+                    for (int j = findEnd(children, i, boundary._file); j >= i; j--) {
+                        node.removeChild(j);
+                    }
+                    continue;
+                }
+                if (!keepBoundaries) {
+                    node.removeChild(i);
+                    continue;
+                }
+            } else if (child instanceof InternalNode) {
+                removeImportedContent((InternalNode) child, keepBoundaries);
+            }
+
+            i++;
+        }
+    }
+
+    private static int findEnd(List<Node> children, int start, File file) {
+        for (int i = start + 1; i < children.size(); i++) {
+            Node child = children.get(i);
+            if (child instanceof ImportBoundaryNode && !((ImportBoundaryNode) child)._start
+                    && ((ImportBoundaryNode) child)._file.equals(file)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("The imported content of " + file + " has no end.");
+    }
+
+    /**
+     * Marks the start or end of an imported file's content. It has no children, so nothing is printed for it.
+     */
+    private static final class ImportBoundaryNode extends PlaceholderNode {
+
+        private final File _file;
+        private final boolean _start;
+
+        private ImportBoundaryNode(File file, boolean start) {
+            _file = file;
+            _start = start;
+        }
+    }
+}
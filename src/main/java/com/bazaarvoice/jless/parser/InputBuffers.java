@@ -0,0 +1,109 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.parser;
+
+import org.apache.commons.io.IOUtils;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.buffers.InputBuffer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Reads LESS input as UTF-8 into {@link InputBuffer}s that can be handed to a parse runner directly, instead of
+ * going through a {@link String} that the runner would copy into a buffer of its own.
+ *
+ * Files are memory mapped and decoded straight into the buffer's array. Malformed input is replaced with the
+ * Unicode replacement character, as it is when reading through an {@link java.io.InputStreamReader}.
+ */
+public final class InputBuffers {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private InputBuffers() {
+    }
+
+    public static Buffer read(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The file " + file + " is too large to be read.");
+            }
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    public static Buffer read(InputStream input) throws IOException {
+        return decode(ByteBuffer.wrap(IOUtils.toByteArray(input)));
+    }
+
+    private static Buffer decode(ByteBuffer bytes) throws CharacterCodingException {
+        CharsetDecoder decoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        // UTF-8 never decodes to more characters than it has bytes
+        char[] chars = new char[bytes.remaining()];
+        CharBuffer charBuffer = CharBuffer.wrap(chars);
+
+        CoderResult result = decoder.decode(bytes, charBuffer, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(charBuffer);
+        }
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+
+        // The parse runner treats the end of the array as the end of the input
+        int length = charBuffer.position();
+        return new Buffer(length == chars.length ? chars : Arrays.copyOf(chars, length));
+    }
+
+    /**
+     * An input buffer that also knows the length of its input, which the parse runner doesn't expose.
+     */
+    public static final class Buffer extends DefaultInputBuffer {
+
+        private final int _length;
+
+        private Buffer(char[] chars) {
+            super(chars);
+            _length = chars.length;
+        }
+
+        public int getLength() {
+            return _length;
+        }
+    }
+}
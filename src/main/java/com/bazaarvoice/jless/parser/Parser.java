@@ -52,6 +52,7 @@ import org.parboiled.Rule;
 import org.parboiled.annotations.MemoMismatches;
 import org.parboiled.support.Var;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -79,6 +80,10 @@ import java.util.List;
 public class Parser extends BaseParser<Node> {
 
     private boolean _parserTranslationEnabled;
+    private int _mixinExpansionCount;
+    private ImportContext _importContext;
+    private SymbolTable _parentSymbolTable;
+    private final List<ScopeNode> _scopeChain = new ArrayList<ScopeNode>();
 
     public Parser() {
         this(true);
@@ -92,21 +97,57 @@ public class Parser extends BaseParser<Node> {
         return _parserTranslationEnabled;
     }
 
+    /**
+     * @return The number of mixin references that have been expanded since the count was last reset.
+     */
+    public int getMixinExpansionCount() {
+        return _mixinExpansionCount;
+    }
+
+    public void resetMixinExpansionCount() {
+        _mixinExpansionCount = 0;
+    }
+
+    public ImportContext getImportContext() {
+        return _importContext;
+    }
+
+    /**
+     * Sets the import state of the document that is about to be parsed. Without one, imports are left as is.
+     */
+    public void setImportContext(ImportContext importContext) {
+        _importContext = importContext;
+    }
+
+    public SymbolTable getParentSymbolTable() {
+        return _parentSymbolTable;
+    }
+
+    /**
+     * Sets the variables and mixins of the parent results of the document that is about to be parsed, which are
+     * visible to the document in addition to its own.
+     */
+    public void setParentSymbolTable(SymbolTable parentSymbolTable) {
+        _parentSymbolTable = parentSymbolTable;
+    }
+
     // ********** Document **********
 
     public Rule Document() {
-        return Sequence(Scope(), EOI);
+        return Sequence(clearScopeChain(), Scope(), EOI);
     }
 
     /**
      * This is the high-level rule at some scope (either the root document or within a rule set / mixin).
-     * Future: Imports
      */
     Rule Scope() {
+        Var<Integer> outerScopeCount = new Var<Integer>();
         return Sequence(
                 push(new ScopeNode()),
+                enterScope(outerScopeCount),
                 ZeroOrMore(
                         FirstOf(
+                                Import(),
                                 Declaration(),
                                 MediaQuery(),
                                 RuleSet(),
@@ -114,7 +155,40 @@ public class Parser extends BaseParser<Node> {
                                 Sequence(push(new WhiteSpaceCollectionNode()), Sp1Nodes())
                         ),
                         peek(1).addChild(pop())
-                )
+                ),
+                exitScope(outerScopeCount)
+        );
+    }
+
+    // ********** Imports **********
+
+    /**
+     * '@import' Ws0 ('url(' Ws0 ImportPath Ws0 ')' / ImportPath) Ws0 ';'
+     */
+    Rule Import() {
+        Var<String> path = new Var<String>();
+        return Sequence(
+                Sequence(
+                        "@import", Ws0(),
+                        FirstOf(
+                                Sequence("url(", Ws0(), ImportPath(path), Ws0(), ')'),
+                                ImportPath(path)
+                        ), Ws0(),
+                        ';'
+                ),
+                resolveImport(path.get(), match()),
+                Ws0Nodes()
+        );
+    }
+
+    /**
+     * String / [-_%$/.&=:#+?Alphanumeric]+
+     */
+    Rule ImportPath(Var<String> path) {
+        return FirstOf(
+                Sequence('\'', ZeroOrMore(TestNot('\''), ANY), path.set(match()), '\''),
+                Sequence('"', ZeroOrMore(TestNot('"'), ANY), path.set(match()), '"'),
+                Sequence(OneOrMore(FirstOf(AnyOf("-_%$/.&=:#+?"), Alphanumeric())), path.set(match()))
         );
     }
 
@@ -261,7 +335,7 @@ public class Parser extends BaseParser<Node> {
                 // No arguments, reference an existing rule set's properties
                 Sequence(
                         SelectorGroup(), ';',
-                        resolveMixinReference(NodeTreeUtils.getFirstChild((InternalNode) pop(), SelectorNode.class).toString(), null),
+                        resolveMixinReference(NodeTreeUtils.getFirstChild((InternalNode) pop(), SelectorNode.class).getSelectorText(), null),
                         Ws0Nodes()
                 ),
                 // Call a mixin, passing along some arguments
@@ -914,7 +988,7 @@ public class Parser extends BaseParser<Node> {
     // ********** Translation Actions **********
 
     /**
-     * Locates the referenced mixin in one of the scope nodes on the stack. If found, the mixin's
+     * Locates the referenced mixin in one of the scopes being parsed, or in a parent result. If found, the mixin's
      * scope is cloned and placed onto the stack in place of the mixin reference. Additionally,
      * any arguments are applied to the mixin's scope.
      */
@@ -923,31 +997,43 @@ public class Parser extends BaseParser<Node> {
             return push(new PlaceholderNode(new SimpleNode(name)));
         }
 
-        // Walk down the stack, looking for a scope node that knows about a given rule set
-        for (Node node : getContext().getValueStack()) {
-            if (!(node instanceof ScopeNode)) {
-                continue;
-            }
+        // Walk up the scope chain, looking for a scope node that knows about a given rule set
+        RuleSetNode ruleSet = null;
+        for (int i = _scopeChain.size() - 1; i >= 0 && ruleSet == null; i--) {
+            ruleSet = _scopeChain.get(i).getRuleSet(name);
+        }
+        if (ruleSet == null && _parentSymbolTable != null) {
+            ruleSet = _parentSymbolTable.getRuleSet(name);
+        }
 
-            ScopeNode scope = (ScopeNode) node;
-            RuleSetNode ruleSet = scope.getRuleSet(name);
+        if (ruleSet == null) {
+            // Record error location
+            throw new UndefinedMixinException(name);
+        }
 
-            if (ruleSet == null) {
-                continue;
-            }
+        // Get the scope of the rule set we located and call it as a mixin
+        ScopeNode ruleSetScope = ruleSet.getScope().callMixin(name, arguments);
+        _mixinExpansionCount++;
 
-            // Get the scope of the rule set we located and call it as a mixin
-            ScopeNode ruleSetScope = NodeTreeUtils.getFirstChild(ruleSet, ScopeNode.class).callMixin(name, arguments);
+        return push(ruleSetScope);
+    }
 
-            return push(ruleSetScope);
+    /**
+     * Places a copy of the imported file's scope on the stack, which is absorbed by the enclosing scope so that
+     * the file's rule sets are printed and its variables and mixins can be referenced. Files that have already
+     * been imported by this document are skipped.
+     */
+    boolean resolveImport(String path, String statement) {
+        if (!isParserTranslationEnabled() || _importContext == null) {
+            return push(new PlaceholderNode(new SimpleNode(statement)));
         }
 
-        // Record error location
-        throw new UndefinedMixinException(name);
+        ScopeNode importedScope = _importContext.importScope(path);
+        return push(importedScope != null ? importedScope : new PlaceholderNode());
     }
 
     /**
-     * Looks for a variable definition that matches the reference in the scope nodes on the stack.
+     * Looks for a variable definition that matches the reference in the scopes being parsed, or in a parent result.
      * If found, a reference node that can repeat this lookup later is placed on the stack, not the
      * current value itself. This is done because the value may change if the variable reference is
      * inside a mixin.
@@ -957,18 +1043,13 @@ public class Parser extends BaseParser<Node> {
             return push(new SimpleNode(name));
         }
 
-        // Walk down the stack, looking for a scope node that knows about a given variable
-        for (Node node : getContext().getValueStack()) {
-            if (!(node instanceof ScopeNode)) {
-                continue;
+        // Walk up the scope chain, looking for a scope node that knows about a given variable
+        for (int i = _scopeChain.size() - 1; i >= 0; i--) {
+            if (_scopeChain.get(i).isVariableDefined(name)) {
+                return push(new VariableReferenceNode(name));
             }
-
-            // Ensure that the variable exists
-            ScopeNode scope = (ScopeNode) node;
-            if (!scope.isVariableDefined(name)) {
-                continue;
-            }
-
+        }
+        if (_parentSymbolTable != null && _parentSymbolTable.isVariableDefined(name)) {
             return push(new VariableReferenceNode(name));
         }
 
@@ -976,6 +1057,41 @@ public class Parser extends BaseParser<Node> {
         throw new UndefinedVariableException(name);
     }
 
+    // ********** Scope Chain **********
+
+    /**
+     * The scopes that are currently being parsed are tracked in a chain, so that variable and mixin lookups only
+     * need to check those scopes instead of every node on the value stack. A previous run may have ended in the
+     * middle of a scope, so the chain is cleared when a document starts.
+     */
+    boolean clearScopeChain() {
+        _scopeChain.clear();
+        return true;
+    }
+
+    /**
+     * Adds the scope that was just pushed to the chain. The parameters of a mixin rule set are held in a scope
+     * of their own just below it on the stack, which must be visible to the mixin's body as well.
+     */
+    boolean enterScope(Var<Integer> outerScopeCount) {
+        outerScopeCount.set(_scopeChain.size());
+
+        if (getContext().getValueStack().size() > 1 && peek(1) instanceof ScopeNode) {
+            _scopeChain.add((ScopeNode) peek(1));
+        }
+        _scopeChain.add((ScopeNode) peek());
+
+        return true;
+    }
+
+    boolean exitScope(Var<Integer> outerScopeCount) {
+        int count = outerScopeCount.get();
+        while (_scopeChain.size() > count) {
+            _scopeChain.remove(_scopeChain.size() - 1);
+        }
+        return true;
+    }
+
     // ********** Debugging **********
 
     boolean debug(Context context) {
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.parser;
+
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.matchers.MemoMismatchesMatcher;
+import org.parboiled.matchers.ProxyMatcher;
+import org.parboiled.matchers.VarFramingMatcher;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Holds fully built {@link Parser#Document()} rules so that Parboiled's parser class extension and rule tree
+ * construction only happen once per rule instance instead of once per input file.
+ *
+ * A rule is not safe for use by multiple parse runs at the same time (actions store the current context in the
+ * parser instance, and {@link org.parboiled.support.Var}s hold per-run frames), so each run must
+ * {@link #acquire} a rule and {@link #release} it when done. A run that ended with an exception may have left
+ * frames behind, so its rule is {@link #discard}ed instead. Additional rules are built on demand, so the pool
+ * grows to the peak number of concurrent runs.
+ *
+ * Rules annotated with {@link org.parboiled.annotations.MemoMismatches} remember the last input index where they
+ * failed to match. That memo is only valid for the input it was recorded against, so it is cleared when a rule
+ * is returned to the pool. Parboiled has no public way to clear it, so the private field of
+ * {@link MemoMismatchesMatcher} in Parboiled 1.0.1 is reset directly. The field is checked when this class is
+ * loaded, so a Parboiled version without it fails right away instead of reusing stale memos.
+ */
+public final class ParserPool {
+
+    private static final String PARBOILED_VERSION = "1.0.1";
+    private static final Field MEMO_FIELD;
+
+    static {
+        try {
+            MEMO_FIELD = MemoMismatchesMatcher.class.getDeclaredField("memo");
+            MEMO_FIELD.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Unable to locate the mismatch memo of the Parboiled matcher. Parser rules " +
+                    "can only be reused with Parboiled " + PARBOILED_VERSION + ".", e);
+        }
+        if (MEMO_FIELD.getType() != int.class || Modifier.isStatic(MEMO_FIELD.getModifiers())
+                || Modifier.isFinal(MEMO_FIELD.getModifiers())) {
+            throw new IllegalStateException("The mismatch memo of the Parboiled matcher has changed. Parser rules " +
+                    "can only be reused with Parboiled " + PARBOILED_VERSION + ".");
+        }
+    }
+
+    private final boolean _translationEnabled;
+    private final Queue<Rule> _rules = new ConcurrentLinkedQueue<Rule>();
+    private final Map<Rule, List<Matcher>> _memoMatchers = Collections.synchronizedMap(new IdentityHashMap<Rule, List<Matcher>>());
+    private final Map<Rule, Parser> _parsers = Collections.synchronizedMap(new IdentityHashMap<Rule, Parser>());
+
+    public ParserPool(boolean translationEnabled) {
+        _translationEnabled = translationEnabled;
+    }
+
+    public boolean isTranslationEnabled() {
+        return _translationEnabled;
+    }
+
+    /**
+     * @return A document rule that is reserved for the caller until it is released.
+     */
+    public Rule acquire() {
+        Rule rule = _rules.poll();
+
+        if (rule == null) {
+            Parser parser = Parboiled.createParser(Parser.class, _translationEnabled);
+            rule = parser.Document();
+            _memoMatchers.put(rule, findMemoMatchers(rule));
+            _parsers.put(rule, parser);
+        }
+
+        return rule;
+    }
+
+    /**
+     * @return The parser instance that built the given rule, which holds the state of the rule's current run.
+     */
+    public Parser getParser(Rule rule) {
+        return _parsers.get(rule);
+    }
+
+    /**
+     * Returns a rule to the pool once the parse run that used it has completed.
+     */
+    public void release(Rule rule) {
+        resetMemos(_memoMatchers.get(rule));
+        _parsers.get(rule).resetMixinExpansionCount();
+        _rules.offer(rule);
+    }
+
+    /**
+     * Forgets a rule whose parse run failed, so that neither it nor its parser are kept by the pool.
+     */
+    public void discard(Rule rule) {
+        _memoMatchers.remove(rule);
+        _parsers.remove(rule);
+    }
+
+    private static List<Matcher> findMemoMatchers(Rule rule) {
+        List<Matcher> memoMatchers = new ArrayList<Matcher>();
+        collectMemoMatchers((Matcher) rule, memoMatchers, Collections.newSetFromMap(new IdentityHashMap<Matcher, Boolean>()));
+        return memoMatchers;
+    }
+
+    private static void collectMemoMatchers(Matcher matcher, List<Matcher> memoMatchers, Set<Matcher> visited) {
+        // Wrapping matchers delegate their children to the wrapped matcher, so peel them off first
+        while (true) {
+            if (matcher instanceof ProxyMatcher) {
+                matcher = ProxyMatcher.unwrap(matcher);
+            } else if (matcher instanceof MemoMismatchesMatcher) {
+                if (visited.add(matcher)) {
+                    memoMatchers.add(matcher);
+                }
+                matcher = MemoMismatchesMatcher.unwrap(matcher);
+            } else if (matcher instanceof VarFramingMatcher) {
+                matcher = VarFramingMatcher.unwrap(matcher);
+            } else {
+                break;
+            }
+        }
+
+        if (!visited.add(matcher)) {
+            return;
+        }
+
+        for (Matcher child : matcher.getChildren()) {
+            collectMemoMatchers(child, memoMatchers, visited);
+        }
+    }
+
+    private static void resetMemos(List<Matcher> memoMatchers) {
+        try {
+            for (Matcher matcher : memoMatchers) {
+                MEMO_FIELD.setInt(matcher, Integer.MIN_VALUE);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to reset the mismatch memo of a Parboiled matcher.", e);
+        }
+    }
+}
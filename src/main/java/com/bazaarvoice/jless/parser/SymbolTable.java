@@ -0,0 +1,60 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless.parser;
+
+import com.bazaarvoice.jless.ast.node.RuleSetNode;
+import com.bazaarvoice.jless.ast.node.ScopeNode;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The variables and mixins that are visible from a scope, including those of all its parent scopes, flattened
+ * so that each lookup is a single hash probe no matter how many parent scopes are layered. Nearer scopes take
+ * precedence, and within a scope the first definition wins (as in {@link ScopeNode}).
+ *
+ * The table is a snapshot, so it should only be built for scopes that are no longer changing, such as the scope
+ * of a processed parent result.
+ */
+public final class SymbolTable {
+
+    private final Set<String> _variableNames = new HashSet<String>();
+    private final Map<String, RuleSetNode> _selectorToRuleSetMap = new HashMap<String, RuleSetNode>();
+
+    public SymbolTable(ScopeNode scope) {
+        for (; scope != null; scope = scope.getParentScope()) {
+            _variableNames.addAll(scope.getVariableNames());
+            for (String selector : scope.getRuleSetSelectors()) {
+                if (!_selectorToRuleSetMap.containsKey(selector)) {
+                    _selectorToRuleSetMap.put(selector, scope.getRuleSet(selector));
+                }
+            }
+        }
+    }
+
+    public boolean isVariableDefined(String name) {
+        return _variableNames.contains(name);
+    }
+
+    public RuleSetNode getRuleSet(String selectorGroup) {
+        return _selectorToRuleSetMap.get(selectorGroup);
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+@Test
+public class CommandLineTest {
+
+    private static final LessProcessor PROCESSOR = new LessProcessor.Builder().setCompressionEnabled(true).build();
+
+    private File _dir;
+    private ByteArrayOutputStream _out;
+    private ByteArrayOutputStream _err;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        _dir = File.createTempFile("jless", "");
+        Assert.assertTrue(_dir.delete() && _dir.mkdir());
+        _out = new ByteArrayOutputStream();
+        _err = new ByteArrayOutputStream();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(_dir);
+    }
+
+    public void testDirectoryIsCompiled() throws IOException {
+        File page = write("styles/page.less", "@color: red;\n.page { color: @color; }\n");
+        File form = write("styles/forms/form.less", ".form { .inner { margin: 0; } }\n");
+        File extra = write("extra.less", ".extra { padding: 0; }\n");
+        write("styles/notes.txt", "not a stylesheet");
+
+        Assert.assertEquals(run("-c", "-t", "2", "-o", path("out"), path("styles"), extra.getPath()), 0, _err.toString());
+
+        Assert.assertEquals(read("out/page.css"), PROCESSOR.process(page).toString());
+        Assert.assertEquals(read("out/forms/form.css"), PROCESSOR.process(form).toString());
+        Assert.assertEquals(read("out/extra.css"), PROCESSOR.process(extra).toString());
+        Assert.assertFalse(new File(_dir, "out/notes.css").exists());
+        Assert.assertTrue(_out.toString().contains("Compiled 3 of 3 files"), _out.toString());
+    }
+
+    public void testFailuresAreReported() throws IOException {
+        write("styles/good.less", ".good { color: red; }\n");
+        write("styles/bad.less", ".bad { .undefined; }\n");
+
+        Assert.assertEquals(run("-o", path("out"), path("styles")), 1);
+
+        Assert.assertTrue(new File(_dir, "out/good.css").exists());
+        Assert.assertTrue(_err.toString().contains("bad.less"), _err.toString());
+        Assert.assertTrue(_out.toString().contains("Compiled 1 of 2 files"), _out.toString());
+    }
+
+    public void testInputsWithTheSameOutputAreRejected() throws IOException {
+        File first = write("a/site.less", ".a { color: red; }\n");
+        File second = write("b/site.less", ".b { color: blue; }\n");
+
+        Assert.assertEquals(run("-o", path("out"), first.getPath(), second.getPath()), 1);
+
+        Assert.assertFalse(new File(_dir, "out/site.css").exists());
+        Assert.assertTrue(_err.toString().contains(first.getPath()), _err.toString());
+        Assert.assertTrue(_err.toString().contains(second.getPath()), _err.toString());
+    }
+
+    public void testSingleFileIsPrinted() throws IOException {
+        File page = write("page.less", ".page { .inner { color: red; } }\n");
+
+        Assert.assertEquals(run("-c", page.getPath()), 0);
+        Assert.assertEquals(_out.toString("UTF-8").trim(), PROCESSOR.process(page).toString().trim());
+    }
+
+    public void testMultipleInputsRequireOutputDirectory() throws IOException {
+        Assert.assertEquals(run(write("a.less", ".a {}\n").getPath(), write("b.less", ".b {}\n").getPath()), 1);
+        Assert.assertTrue(_err.toString().contains("-o"), _err.toString());
+    }
+
+    private int run(String... args) {
+        return CommandLine.run(args, new PrintStream(_out, true), new PrintStream(_err, true));
+    }
+
+    private String path(String fileName) {
+        return new File(_dir, fileName).getPath();
+    }
+
+    private File write(String fileName, String content) throws IOException {
+        File file = new File(_dir, fileName);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        return file;
+    }
+
+    private String read(String fileName) throws IOException {
+        return FileUtils.readFileToString(new File(_dir, fileName), "UTF-8");
+    }
+}
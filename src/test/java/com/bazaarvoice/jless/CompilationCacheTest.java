@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+@Test
+public class CompilationCacheTest {
+
+    private static final LessProcessor PROCESSOR = new LessProcessor();
+
+    public void testRepeatedInputIsCached() throws IOException {
+        CompilationCache cache = new CompilationCache(PROCESSOR, 10);
+
+        LessProcessor.Result first = cache.process(open("nested"));
+        LessProcessor.Result second = cache.process(open("nested"));
+
+        Assert.assertSame(second, first);
+        Assert.assertEquals(first.toString(), PROCESSOR.process(open("nested")).toString());
+        Assert.assertEquals(cache.getHitCount(), 1);
+        Assert.assertEquals(cache.getMissCount(), 1);
+    }
+
+    public void testParentIsPartOfKey() throws IOException {
+        CompilationCache cache = new CompilationCache(PROCESSOR, 10);
+
+        LessProcessor.Result parent = cache.process(open("mixins-args-minimal"));
+        LessProcessor.Result child = cache.process(parent, open("scope"));
+
+        // A parent with the same content as a cached one maps to the same entries
+        Assert.assertSame(cache.process(parent, open("scope")), child);
+        Assert.assertSame(cache.process(cache.process(open("mixins-args-minimal")), open("scope")), child);
+
+        // Unknown parents only match themselves
+        LessProcessor.Result otherParent = PROCESSOR.process(open("mixins-args-minimal"));
+        LessProcessor.Result otherChild = cache.process(otherParent, open("scope"));
+        Assert.assertNotSame(otherChild, child);
+        Assert.assertSame(cache.process(otherParent, open("scope")), otherChild);
+
+        Assert.assertNotSame(cache.process(open("scope")), child);
+        Assert.assertEquals(cache.getHitCount(), 4);
+        Assert.assertEquals(cache.getMissCount(), 4);
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        CompilationCache cache = new CompilationCache(PROCESSOR, 2);
+
+        LessProcessor.Result css = cache.process(open("css"));
+        LessProcessor.Result nested = cache.process(open("nested"));
+        cache.process(open("css"));
+        cache.process(open("rulesets"));
+
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertSame(cache.process(open("css")), css);
+        Assert.assertNotSame(cache.process(open("nested")), nested);
+        Assert.assertEquals(cache.getHitCount(), 2);
+        Assert.assertEquals(cache.getMissCount(), 4);
+    }
+
+    public void testFilesImportFromTheirOwnDirectory() throws IOException {
+        File dir = File.createTempFile("jless", "");
+        Assert.assertTrue(dir.delete() && dir.mkdir());
+        try {
+            FileUtils.writeStringToFile(new File(dir, "red/colors.less"), "@color: red;\n", "UTF-8");
+            FileUtils.writeStringToFile(new File(dir, "blue/colors.less"), "@color: blue;\n", "UTF-8");
+            String page = "@import \"colors\";\n.page { color: @color; }\n";
+            File redPage = new File(dir, "red/page.less");
+            File bluePage = new File(dir, "blue/page.less");
+            FileUtils.writeStringToFile(redPage, page, "UTF-8");
+            FileUtils.writeStringToFile(bluePage, page, "UTF-8");
+
+            CompilationCache cache = new CompilationCache(PROCESSOR, 10);
+            Assert.assertEquals(cache.process(redPage).toString(), PROCESSOR.process(redPage).toString());
+            Assert.assertEquals(cache.process(bluePage).toString(), PROCESSOR.process(bluePage).toString());
+            Assert.assertTrue(cache.process(bluePage).toString().contains("color: blue;"));
+            Assert.assertEquals(cache.getHitCount(), 1);
+            Assert.assertEquals(cache.getMissCount(), 2);
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private InputStream open(String fileName) {
+        InputStream stream = getClass().getResourceAsStream("/less/" + fileName + ".less");
+        Assert.assertNotNull(stream, "Unable to read " + fileName + ".less");
+        return stream;
+    }
+}
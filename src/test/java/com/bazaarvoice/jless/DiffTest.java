@@ -32,7 +32,6 @@ public abstract class DiffTest extends ProcessingTest {
 
     @Override
     protected void runTestFor(String fileName) {
-        setProcessorOptions();
         LessProcessor.Result result = runProcessor(assembleInput(fileName));
         saveOutput(fileName, result.toString());
         diffOutput(fileName, result.toString());
@@ -40,14 +39,13 @@ public abstract class DiffTest extends ProcessingTest {
 
     @Override
     protected void runTestFor(String parentFileName, String fileName) {
-        setProcessorOptions();
         LessProcessor.Result result = runProcessor(runProcessor(assembleInput(parentFileName)), assembleInput(fileName));
         saveOutput(fileName, result.toString());
         diffOutput(fileName, result.toString());
     }
 
     private void diffOutput(String fileName, String output) {
-        InputStream referenceStream = getClass().getResourceAsStream("/expected/" + getGeneratedDirName() + "/" + fileName + ".css");
+        InputStream referenceStream = getClass().getResourceAsStream("/expected/" + getExpectedDirName() + "/" + fileName + ".css");
         List<String> referenceLines = null;
 
         try {
@@ -81,6 +79,10 @@ public abstract class DiffTest extends ProcessingTest {
         Assert.assertEquals(diff.getDeltas().size(), 0);
     }
 
+    protected String getExpectedDirName() {
+        return getGeneratedDirName();
+    }
+
     @Override
     protected String getGeneratedFileExtension() {
         return ".css";
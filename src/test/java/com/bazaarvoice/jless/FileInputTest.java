@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+@Test
+public class FileInputTest {
+
+    private static final LessProcessor PROCESSOR = new LessProcessor();
+
+    private File _file;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        _file = File.createTempFile("jless", ".less");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        Assert.assertTrue(_file.delete());
+    }
+
+    public void testMultiByteCharacters() throws IOException {
+        byte[] input = "@name: \"Caf\u00e9 \u2603 \ud83d\ude00\";\n.menu:before { content: @name; }\n".getBytes("UTF-8");
+
+        String output = compareOutput(input);
+        Assert.assertTrue(output.contains("\"Caf\u00e9 \u2603 \ud83d\ude00\""), output);
+    }
+
+    public void testMalformedInput() throws IOException {
+        compareOutput(new byte[] {'.', 'a', ' ', '{', ' ', 'b', ':', ' ', (byte) 0xc3, ';', ' ', '}'});
+    }
+
+    public void testEmptyFile() throws IOException {
+        Assert.assertEquals(compareOutput(new byte[0]), "");
+    }
+
+    private String compareOutput(byte[] input) throws IOException {
+        FileUtils.writeByteArrayToFile(_file, input);
+
+        String expected = PROCESSOR.process(new ByteArrayInputStream(input)).toString();
+        Assert.assertEquals(PROCESSOR.process(_file).toString(), expected);
+        return expected;
+    }
+}
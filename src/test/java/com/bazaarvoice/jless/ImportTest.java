@@ -0,0 +1,151 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+
+package com.bazaarvoice.jless;
+
+import com.bazaarvoice.jless.exception.LessTranslationException;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Test
+public class ImportTest {
+
+    private File _dir;
+    private LessProcessor _processor;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        _dir = File.createTempFile("jless", "");
+        Assert.assertTrue(_dir.delete() && _dir.mkdir());
+        _processor = new LessProcessor.Builder().addImportPath(new File(_dir, "shared")).build();
+
+        write("shared/theme.less", "@color: red;\n.theme { padding: 0; }\n.mixin { color: @color; }\n");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(_dir);
+    }
+
+    public void testFilesAreImportedOnce() throws IOException {
+        write("base.less", "@import \"theme\";\n.base { margin: 0; }\n");
+        File page = write("page.less", "@import 'base.less';\n@import url(theme.less);\n.page { .mixin; }\n");
+
+        String output = _processor.process(page).toString();
+
+        Assert.assertEquals(count(output, ".theme {"), 1, output);
+        Assert.assertEquals(count(output, ".base {"), 1, output);
+        Assert.assertTrue(output.contains("color: red;"), output);
+    }
+
+    public void testFilesImportedByImportsAreImportedOnce() throws IOException {
+        write("base.less", "@import \"theme\";\n.base { margin: 0; }\n");
+        File page = write("page.less", "@import url(theme.less);\n@import 'base.less';\n.page { .mixin; }\n");
+
+        String output = _processor.process(page).toString();
+
+        Assert.assertEquals(count(output, ".theme {"), 1, output);
+        Assert.assertEquals(count(output, ".base {"), 1, output);
+        Assert.assertTrue(output.indexOf(".theme {") < output.indexOf(".base {"), output);
+        Assert.assertFalse(output.contains("@import"), output);
+
+        // The cached scope of the intermediate file still holds the content for documents that haven't seen it
+        String baseOutput = _processor.process(write("other.less", "@import 'base.less';\n")).toString();
+        Assert.assertEquals(count(baseOutput, ".theme {"), 1, baseOutput);
+    }
+
+    public void testFilesAreImportedConcurrently() throws IOException {
+        write("base.less", "@import \"theme\";\n.base { .mixin; }\n");
+        write("other.less", "@import \"base\";\n@import \"theme\";\n");
+        List<File> pages = new ArrayList<File>();
+        for (int i = 0; i < 16; i++) {
+            pages.add(write("page" + i + ".less", "@import \"" + (i % 2 == 0 ? "base" : "other") + "\";\n.page" + i + " { .mixin; }\n"));
+        }
+
+        LessProcessor processor = new LessProcessor.Builder().addImportPath(new File(_dir, "shared")).setThreadCount(4).build();
+        Map<File, LessProcessor.Result> results = processor.processAll(pages);
+
+        for (LessProcessor.Result result : results.values()) {
+            String output = result.toString();
+            Assert.assertEquals(count(output, ".theme {"), 1, output);
+            Assert.assertEquals(count(output, ".base {"), 1, output);
+        }
+    }
+
+    public void testChangedImportsAreParsedAgain() throws IOException {
+        File page = write("page.less", "@import \"base\";\n.page { .mixin; }\n");
+        File base = write("base.less", "@import \"theme\";\n");
+
+        Assert.assertTrue(_processor.process(page).toString().contains("color: red;"));
+
+        File theme = write("shared/theme.less", "@color: blue;\n.mixin { color: @color; }\n");
+        Assert.assertTrue(theme.setLastModified(base.lastModified() + 10000));
+
+        String output = _processor.process(page).toString();
+        Assert.assertTrue(output.contains("color: blue;"), output);
+    }
+
+    @Test(expectedExceptions = LessTranslationException.class, expectedExceptionsMessageRegExp = "(?s).*missing.less.*")
+    public void testMissingImport() throws IOException {
+        _processor.process(write("page.less", "@import \"missing.less\";\n"));
+    }
+
+    public void testSyntaxErrorAfterImportIsReported() throws IOException {
+        File page = write("page.less", "@import \"theme\";\n.page { color: @color;\n");
+
+        try {
+            _processor.process(page);
+            Assert.fail("The missing brace was not reported.");
+        } catch (LessTranslationException e) {
+            // Imports are repeated by the runs that locate the error, so the imported variable stays defined
+            Assert.assertFalse(e.getMessage().contains("has not been defined"), e.getMessage());
+            Assert.assertTrue(e.getMessage().contains("Invalid input"), e.getMessage());
+        }
+    }
+
+    @Test(expectedExceptions = LessTranslationException.class, expectedExceptionsMessageRegExp = "(?s).*imports itself.*")
+    public void testCircularImport() throws IOException {
+        write("a.less", "@import \"b\";\n");
+        write("b.less", "@import \"a\";\n");
+        _processor.process(write("page.less", "@import \"a\";\n"));
+    }
+
+    private File write(String fileName, String content) throws IOException {
+        File file = new File(_dir, fileName);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        return file;
+    }
+
+    private static int count(String text, String search) {
+        int count = 0;
+        for (int i = text.indexOf(search); i >= 0; i = text.indexOf(search, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+
+package com.bazaarvoice.jless;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+@Test
+public class IncrementalProcessorTest {
+
+    private File _dir;
+    private File _theme;
+    private File _page;
+    private File _other;
+    private int _parseCount;
+    private IncrementalProcessor _processor;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        _dir = File.createTempFile("jless", "");
+        Assert.assertTrue(_dir.delete() && _dir.mkdir());
+
+        _theme = write("theme.less", "@color: red;\n.mixin { color: @color; }\n");
+        _page = write("page.less", ".page { .mixin; }\n");
+        _other = write("other.less", ".other { border: 0; }\n");
+
+        _parseCount = 0;
+        LessProcessor processor = new LessProcessor.Builder().setMetricsListener(new MetricsListener() {
+            @Override
+            public void phaseCompleted(LessProcessor.Result result, Phase phase, long elapsedNanos) {
+                if (phase == Phase.PARSE) {
+                    _parseCount++;
+                }
+            }
+
+            @Override
+            public void countRecorded(LessProcessor.Result result, Count count, int value) {}
+        }).build();
+
+        _processor = new IncrementalProcessor(processor);
+        _processor.addFile(_theme);
+        _processor.addFile(_page, _theme);
+        _processor.addFile(_other);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(_dir);
+    }
+
+    public void testResultsAreReused() throws IOException {
+        String page = _processor.getResult(_page).toString();
+        Assert.assertTrue(page.contains("color: red"), page);
+        Assert.assertEquals(_parseCount, 2);
+
+        _processor.getResult(_theme).toString();
+        Assert.assertSame(_processor.getResult(_page), _processor.getResult(_page));
+        Assert.assertEquals(_parseCount, 2);
+    }
+
+    public void testChangedFileIsParsedAlone() throws IOException {
+        _processor.getResult(_page).toString();
+        _processor.getResult(_other).toString();
+
+        write("page.less", ".changed { .mixin; }\n");
+        Assert.assertEquals(_processor.invalidate(_page), Collections.singleton(_page));
+
+        Assert.assertTrue(_processor.getResult(_page).toString().contains(".changed"));
+        Assert.assertEquals(_parseCount, 4);
+    }
+
+    public void testChangedParentReparsesDependents() throws IOException {
+        _processor.getResult(_page).toString();
+        _processor.getResult(_other).toString();
+
+        write("theme.less", "@color: blue;\n.mixin { color: @color; }\n");
+        Assert.assertEquals(_processor.invalidate(_theme), new LinkedHashSet<File>(Arrays.asList(_theme, _page)));
+
+        String page = _processor.getResult(_page).toString();
+        Assert.assertTrue(page.contains("color: blue"), page);
+        Assert.assertEquals(_parseCount, 5);
+    }
+
+    public void testRefreshFindsModifiedFiles() throws IOException {
+        _processor.getResult(_page).toString();
+        _processor.getResult(_other).toString();
+
+        Assert.assertTrue(_processor.refresh().isEmpty());
+
+        Assert.assertTrue(_theme.setLastModified(_theme.lastModified() - 10000));
+        Assert.assertEquals(_processor.refresh(), new HashSet<File>(Arrays.asList(_theme, _page)));
+        Assert.assertTrue(_processor.refresh().isEmpty());
+    }
+
+    public void testRefreshFindsModifiedImports() throws IOException {
+        File imported = write("imported.less", ".imported { color: red; }\n");
+        File importing = write("importing.less", "@import \"imported\";\n");
+        _processor.addFile(importing);
+        _processor.getResult(importing).toString();
+        _processor.getResult(_other).toString();
+
+        Assert.assertTrue(_processor.refresh().isEmpty());
+
+        write("imported.less", ".imported { color: blue; }\n");
+        Assert.assertTrue(imported.setLastModified(imported.lastModified() - 10000));
+        Assert.assertEquals(_processor.refresh(), Collections.singleton(importing));
+
+        String output = _processor.getResult(importing).toString();
+        Assert.assertTrue(output.contains("color: blue"), output);
+        Assert.assertTrue(_processor.refresh().isEmpty());
+    }
+
+    private File write(String fileName, String content) throws IOException {
+        File file = new File(_dir, fileName);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        return file;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+
+package com.bazaarvoice.jless;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Test
+public class MetricsListenerTest {
+
+    public void testAllPhasesAndCountsAreReported() throws IOException {
+        RecordingListener listener = new RecordingListener();
+        LessProcessor processor = new LessProcessor.Builder().setOptimizationEnabled(true).setMetricsListener(listener).build();
+
+        LessProcessor.Result result = processor.process(getClass().getResourceAsStream("/less/mixins-args-minimal.less"));
+
+        Assert.assertEquals(listener._phases.keySet().size(), 2);
+        Assert.assertEquals(listener._counts.get(MetricsListener.Count.MIXINS_EXPANDED), Integer.valueOf(9));
+        Assert.assertTrue(listener._counts.get(MetricsListener.Count.NODES_CREATED) > 0);
+
+        result.toString();
+        result.toString();
+
+        Assert.assertEquals(listener._phases.keySet().size(), MetricsListener.Phase.values().length);
+        Assert.assertEquals(listener._counts.keySet().size(), MetricsListener.Count.values().length);
+        Assert.assertTrue(listener._counts.get(MetricsListener.Count.VARIABLES_RESOLVED) > 0);
+        for (Long elapsedNanos : listener._phases.values()) {
+            Assert.assertTrue(elapsedNanos >= 0);
+        }
+    }
+
+    private static class RecordingListener implements MetricsListener {
+        private final Map<Phase, Long> _phases = new EnumMap<Phase, Long>(Phase.class);
+        private final Map<Count, Integer> _counts = new EnumMap<Count, Integer>(Count.class);
+
+        @Override
+        public void phaseCompleted(LessProcessor.Result result, Phase phase, long elapsedNanos) {
+            Assert.assertFalse(_phases.containsKey(phase), phase + " was reported more than once");
+            _phases.put(phase, elapsedNanos);
+        }
+
+        @Override
+        public void countRecorded(LessProcessor.Result result, Count count, int value) {
+            Assert.assertFalse(_counts.containsKey(count), count + " was reported more than once");
+            _counts.put(count, value);
+        }
+    }
+}
@@ -20,11 +20,16 @@ package com.bazaarvoice.jless;
 
 import com.bazaarvoice.jless.ast.node.InternalNode;
 import com.bazaarvoice.jless.ast.node.PlaceholderNode;
+import com.bazaarvoice.jless.ast.node.SelectorNode;
+import com.bazaarvoice.jless.ast.node.SelectorSegmentNode;
 import com.bazaarvoice.jless.ast.node.SimpleNode;
 import com.bazaarvoice.jless.ast.util.RandomAccessListIterator;
+import com.bazaarvoice.jless.ast.visitor.Printer;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.List;
+
 @Test
 public class NodeTest {
 
@@ -55,4 +60,83 @@ public class NodeTest {
         Assert.assertEquals(i2.nextIndex(), 3);
         Assert.assertEquals(i3.nextIndex(), 4);
     }
+
+    public void testRemoveChildren() {
+        InternalNode p = new PlaceholderNode();
+        p.addChild(new SimpleNode("c1"));
+        p.addChild(new PlaceholderNode(new SimpleNode("p1")));
+        p.addChild(new SimpleNode("c2"));
+        p.addChild(new PlaceholderNode(new SimpleNode("p2")));
+        p.addChild(new SimpleNode("c3"));
+
+        RandomAccessListIterator i1 = p.pushChildIterator();
+        i1.next();
+        i1.next();
+        i1.next();
+        RandomAccessListIterator i2 = p.pushChildIterator();
+        i2.next();
+
+        List<PlaceholderNode> removed = p.removeChildren(PlaceholderNode.class);
+
+        Assert.assertEquals(removed.size(), 2);
+        Assert.assertNull(removed.get(0).getParent());
+        Assert.assertEquals(removed.get(1).toString(), "p2");
+        Assert.assertEquals(p.toString(), "c1c2c3");
+        Assert.assertEquals(i1.nextIndex(), 2);
+        Assert.assertEquals(i2.nextIndex(), 1);
+    }
+
+    public void testSelectorCombination() {
+        SelectorNode parent = new SelectorNode(new SelectorSegmentNode("", ".a"));
+        parent.addChild(new SelectorSegmentNode(" ", ".b"));
+
+        assertCombination(parent, new SelectorNode(new SelectorSegmentNode("", ".c")), ".a .b .c");
+        assertCombination(parent, new SelectorNode(new SelectorSegmentNode("> ", ".c")), ".a .b> .c");
+
+        SelectorSegmentNode pseudo = new SelectorSegmentNode("", ":hover");
+        pseudo.setSubElementSelector(true);
+        assertCombination(parent, new SelectorNode(pseudo), ".a .b:hover");
+
+        SelectorSegmentNode universal = new SelectorSegmentNode("", "*");
+        universal.setUniversal(true);
+        SelectorNode universalSelector = new SelectorNode(universal);
+        universalSelector.addChild(new SelectorSegmentNode(" ", "html"));
+        assertCombination(parent, universalSelector, "* .a .b html");
+    }
+
+    public void testRecycledPrinterBuffer() {
+        InternalNode p = new PlaceholderNode();
+        p.addChild(new SimpleNode("c1"));
+        p.addChild(new SimpleNode("c2"));
+
+        Printer first = new Printer();
+        p.traverse(first);
+        Assert.assertEquals(first.toString(), "c1c2");
+        first.recycle();
+
+        // The next printer starts out empty, and printers nested in its traversal get buffers of their own
+        Printer second = new Printer() {
+            @Override
+            public boolean visit(SimpleNode node) {
+                Assert.assertEquals(node.toString(), node.getValue());
+                return super.visit(node);
+            }
+        };
+        p.traverse(second);
+        Assert.assertEquals(second.toString(), "c1c2");
+    }
+
+    private static void assertCombination(SelectorNode parent, SelectorNode nested, String expected) {
+        String parentText = parent.getSelectorText();
+        String nestedText = nested.getSelectorText();
+
+        // Adding a nested selector to a parent selector absorbs its segments in the same way
+        SelectorNode absorbed = parent.clone();
+        absorbed.addChild(nested.clone());
+
+        Assert.assertEquals(parent.combine(nested).getSelectorText(), expected);
+        Assert.assertEquals(absorbed.getSelectorText(), expected);
+        Assert.assertEquals(parent.getSelectorText(), parentText);
+        Assert.assertEquals(nested.getSelectorText(), nestedText);
+    }
 }
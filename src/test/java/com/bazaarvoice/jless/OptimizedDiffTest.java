@@ -0,0 +1,71 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+@Test
+public class OptimizedDiffTest extends DiffTest {
+
+    private static final LessProcessor PROCESSOR = TestUtils.addImportPaths(new LessProcessor.Builder())
+            .setTranslationEnabled(true)
+            .setCompressionEnabled(true)
+            .setOptimizationEnabled(true)
+            .build();
+
+    private static final LessProcessor UNCOMPRESSED_PROCESSOR = new LessProcessor.Builder()
+            .setOptimizationEnabled(true)
+            .build();
+
+    /**
+     * Comments are printed unless the output is compressed, so rule sets holding them must be kept.
+     */
+    public void testCommentsAreKeptWhenNotCompressed() throws IOException {
+        String input = ".empty { /*! license */ }\n" +
+                ".a { color: red; }\n" +
+                ".b { /* second */ color: red; }\n" +
+                ".c { color: red; }\n" +
+                ".d { color: red; /* after */ }\n" +
+                ".e { }\n";
+
+        String output = UNCOMPRESSED_PROCESSOR.process(new ByteArrayInputStream(input.getBytes("UTF-8"))).toString();
+        Assert.assertTrue(output.contains(".empty { /*! license */ }"), output);
+        Assert.assertTrue(output.contains(".b { /* second */ color: red; }"), output);
+        Assert.assertTrue(output.contains(".c"), output);
+        Assert.assertTrue(output.contains(".d { color: red; /* after */ }"), output);
+        Assert.assertFalse(output.contains(".e {"), output);
+
+        String compressed = PROCESSOR.process(new ByteArrayInputStream(input.getBytes("UTF-8"))).toString();
+        Assert.assertTrue(compressed.startsWith(".a,.b,.c,.d{color:red"), compressed);
+    }
+
+    @Override
+    protected LessProcessor getProcessor() {
+        return PROCESSOR;
+    }
+
+    @Override
+    protected String getGeneratedDirName() {
+        return "optimized";
+    }
+}
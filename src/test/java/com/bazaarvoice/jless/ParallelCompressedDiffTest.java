@@ -0,0 +1,74 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+@Test
+public class ParallelCompressedDiffTest extends DiffTest {
+
+    private static final LessProcessor PROCESSOR = TestUtils.addImportPaths(new LessProcessor.Builder())
+            .setTranslationEnabled(true)
+            .setCompressionEnabled(true)
+            .setThreadCount(4)
+            .setParallelTranslationEnabled(true)
+            .build();
+
+    private static final LessProcessor SEQUENTIAL_PROCESSOR = new LessProcessor.Builder()
+            .setCompressionEnabled(true)
+            .build();
+
+    /**
+     * Line breaks are added to compressed output based on the position in the whole output, so they must be
+     * placed the same way when the output is printed in parts.
+     */
+    public void testLongOutputIsIdentical() throws IOException {
+        StringBuilder sb = new StringBuilder("@color: red;\n.mixin(@width: 1px) { border: @width solid @color; }\n");
+        for (int i = 0; i < 2000; i++) {
+            sb.append(".rule").append(i).append(" { color: @color; .mixin(").append(i).append("px);\n")
+                    .append("  .nested { margin: ").append(i).append("px; }\n}\n");
+        }
+        byte[] input = sb.toString().getBytes("UTF-8");
+
+        String expected = SEQUENTIAL_PROCESSOR.process(new ByteArrayInputStream(input)).toString();
+        String output = PROCESSOR.process(new ByteArrayInputStream(input)).toString();
+
+        Assert.assertTrue(expected.split("\n").length > 10);
+        Assert.assertEquals(output, expected);
+    }
+
+    @Override
+    protected LessProcessor getProcessor() {
+        return PROCESSOR;
+    }
+
+    @Override
+    protected String getGeneratedDirName() {
+        return "compressed-parallel";
+    }
+
+    @Override
+    protected String getExpectedDirName() {
+        return "compressed";
+    }
+}
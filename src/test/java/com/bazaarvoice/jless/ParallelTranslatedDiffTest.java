@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+@Test
+public class ParallelTranslatedDiffTest extends DiffTest {
+
+    private static final LessProcessor PROCESSOR = TestUtils.addImportPaths(new LessProcessor.Builder())
+            .setTranslationEnabled(true)
+            .setCompressionEnabled(false)
+            .setThreadCount(4)
+            .setParallelTranslationEnabled(true)
+            .build();
+
+    public void testTranslationThreadsAreShared() throws IOException {
+        ExecutorService executor = PROCESSOR.getTranslationExecutor();
+
+        for (int i = 0; i < 2; i++) {
+            PROCESSOR.process(getClass().getResourceAsStream("/less/css.less")).toString();
+        }
+
+        Assert.assertSame(PROCESSOR.getTranslationExecutor(), executor);
+        Assert.assertFalse(executor.isShutdown());
+    }
+
+    @Override
+    protected LessProcessor getProcessor() {
+        return PROCESSOR;
+    }
+
+    @Override
+    protected String getGeneratedDirName() {
+        return "translated-parallel";
+    }
+
+    @Override
+    protected String getExpectedDirName() {
+        return "translated";
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import com.bazaarvoice.jless.exception.LessTranslationException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+@Test
+public class ParentResultTest {
+
+    private static final LessProcessor PROCESSOR = new LessProcessor();
+
+    public void testGrandparentSymbolsAreVisible() throws IOException {
+        LessProcessor.Result base = process(null, "@size: 2px;\n.border { border: @size solid; }\n");
+        LessProcessor.Result theme = process(base, "@color: red;\n");
+        LessProcessor.Result page = process(theme, ".page { color: @color; margin: @size; .border; }\n");
+
+        String output = page.toString();
+        Assert.assertTrue(output.contains("color: red;"), output);
+        Assert.assertTrue(output.contains("margin: 2px;"), output);
+        Assert.assertTrue(output.contains("border: 2px solid;"), output);
+    }
+
+    public void testNearerDefinitionsTakePrecedence() throws IOException {
+        LessProcessor.Result base = process(null, "@color: red;\n.mixin { padding: 1px; }\n");
+        LessProcessor.Result theme = process(base, "@color: blue;\n.mixin { padding: 2px; }\n");
+        LessProcessor.Result page = process(theme, ".page { color: @color; .mixin; }\n");
+
+        String output = page.toString();
+        Assert.assertTrue(output.contains("color: blue;"), output);
+        Assert.assertTrue(output.contains("padding: 2px;"), output);
+    }
+
+    @Test(expectedExceptions = LessTranslationException.class, expectedExceptionsMessageRegExp = "(?s).*@undefined.*")
+    public void testUndefinedVariable() throws IOException {
+        process(process(null, "@color: red;\n"), ".page { color: @undefined; }\n");
+    }
+
+    private LessProcessor.Result process(LessProcessor.Result parent, String input) throws IOException {
+        return PROCESSOR.process(parent, new ByteArrayInputStream(input.getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import com.bazaarvoice.jless.exception.LessTranslationException;
+import com.bazaarvoice.jless.ast.node.Node;
+import com.bazaarvoice.jless.parser.DocumentParseRunner;
+import com.bazaarvoice.jless.parser.ParserPool;
+import org.parboiled.Rule;
+import org.parboiled.support.DefaultValueStack;
+import org.parboiled.support.ParsingResult;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+@Test
+public class ParseErrorTest {
+
+    private static final LessProcessor PROCESSOR = new LessProcessor();
+
+    public void testSyntaxErrorIsLocated() throws IOException {
+        String message = getErrorMessage(".a { color: red; }\n.b {{ }\n");
+
+        Assert.assertTrue(message.contains("Invalid input '{', expected Scope, Ws0 or '}' (line 2, pos 5)"), message);
+    }
+
+    public void testActionErrorIsReported() throws IOException {
+        String message = getErrorMessage(".a { .undefined; }\n");
+
+        Assert.assertTrue(message.contains("The mixin .undefined has not been defined. (line 1, pos 17)"), message);
+    }
+
+    public void testParsingContinuesAfterActionError() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            getErrorMessage(".a { .undefined; }\n");
+            String output = PROCESSOR.process(new ByteArrayInputStream(".b { color: red; }\n".getBytes("UTF-8"))).toString();
+            Assert.assertEquals(output, ".b { color: red; }\n");
+        }
+    }
+
+    public void testDiscardedRulesAreForgotten() {
+        ParserPool pool = new ParserPool(true);
+        Rule rule = pool.acquire();
+        Assert.assertNotNull(pool.getParser(rule));
+
+        pool.discard(rule);
+        Assert.assertNull(pool.getParser(rule));
+    }
+
+    /**
+     * The first input leaves a mismatch memoed at an index where the second input has to match.
+     */
+    public void testReleasedRulesForgetMemoedMismatches() {
+        ParserPool pool = new ParserPool(false);
+        String[] inputs = {"@z: @x;\n", "@x: 1;\n.a { color: red; }\n"};
+        for (String input : inputs) {
+            Rule rule = pool.acquire();
+            ParsingResult<Node> result = new DocumentParseRunner<Node>(rule, pool.getParser(rule))
+                    .withValueStack(new DefaultValueStack<Node>())
+                    .run(input);
+            pool.release(rule);
+            Assert.assertTrue(result.matched && !result.hasErrors(), input);
+        }
+    }
+
+    private static String getErrorMessage(String input) throws IOException {
+        try {
+            PROCESSOR.process(new ByteArrayInputStream(input.getBytes("UTF-8")));
+        } catch (LessTranslationException e) {
+            return e.getMessage();
+        }
+        throw new AssertionError("The input was parsed without errors.");
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Test
+public class ProcessAllTest {
+
+    private static final String[] FILE_NAMES = {
+            "comments", "css", "css-3", "dash-prefix", "ie", "media", "mixins-args-minimal", "nested",
+            "nested-hybrid", "redundant", "rulesets", "scope", "selectors", "strings", "whitespace"
+    };
+
+    public void testProcessAllMatchesSequentialOutput() throws IOException, URISyntaxException {
+        LessProcessor processor = new LessProcessor.Builder().setThreadCount(4).build();
+
+        List<File> inputs = new ArrayList<File>();
+        for (String fileName : FILE_NAMES) {
+            inputs.add(new File(getClass().getResource("/less/" + fileName + ".less").toURI()));
+        }
+
+        Map<File, LessProcessor.Result> results = processor.processAll(inputs);
+
+        Assert.assertEquals(new ArrayList<File>(results.keySet()), inputs);
+        for (File input : inputs) {
+            Assert.assertEquals(results.get(input).toString(), processor.process(input).toString(), input.getName());
+        }
+    }
+}
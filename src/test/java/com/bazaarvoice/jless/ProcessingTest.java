@@ -31,20 +31,20 @@ import java.io.PrintStream;
 @Test
 public class ProcessingTest {
 
-    protected static final LessProcessor PROCESSOR = new LessProcessor();
+    private static final LessProcessor PROCESSOR = TestUtils.addImportPaths(new LessProcessor.Builder())
+            .setTranslationEnabled(false)
+            .setCompressionEnabled(false)
+            .build();
 
-    protected void setProcessorOptions() {
-        PROCESSOR.setTranslationEnabled(false);
-        PROCESSOR.setCompressionEnabled(false);
+    protected LessProcessor getProcessor() {
+        return PROCESSOR;
     }
 
     protected void runTestFor(String fileName) {
-        setProcessorOptions();
         saveOutput(fileName, runProcessor(assembleInput(fileName)).toString());
     }
 
     protected void runTestFor(String parentFileName, String fileName) {
-        setProcessorOptions();
         saveOutput(fileName, runProcessor(runProcessor(assembleInput(parentFileName)), assembleInput(fileName)).toString());
     }
 
@@ -60,7 +60,7 @@ public class ProcessingTest {
 
     protected LessProcessor.Result runProcessor(LessProcessor.Result parent, InputStream input) {
         try {
-            return PROCESSOR.process(parent, input);
+            return getProcessor().process(parent, input);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -116,6 +116,10 @@ public class ProcessingTest {
         runTestFor("ie");
     }
 
+    public void testImportWithExtraPaths() {
+        runTestFor("import-with-extra-paths");
+    }
+
     public void testMedia() {
         runTestFor("media");
     }
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import com.bazaarvoice.jless.ast.util.NodeSnapshots;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+@Test
+public class SnapshotCacheTest {
+
+    private static final LessProcessor PROCESSOR = new LessProcessor();
+
+    private File _dir;
+    private File _snapshotDir;
+    private File _library;
+    private File _page;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        _dir = File.createTempFile("jless", "");
+        Assert.assertTrue(_dir.delete() && _dir.mkdir());
+        _snapshotDir = new File(_dir, "snapshots");
+
+        _library = write("library.less", "@color: red;\n.mixin(@width: 1px) { border: @width solid @color; }\n.hidden { color: blue; }\n");
+        _page = write("page.less", ".page { .mixin(2px); color: @color; }\n");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(_dir);
+    }
+
+    public void testSnapshotsAreReused() throws IOException {
+        String expected = PROCESSOR.process(PROCESSOR.process(_library), _page).toString();
+
+        SnapshotCache cache = new SnapshotCache(PROCESSOR, _snapshotDir);
+        Assert.assertEquals(cache.process(cache.process(_library), _page).toString(), expected);
+        Assert.assertEquals(cache.getMissCount(), 2);
+
+        // A new cache stands in for a later run
+        SnapshotCache laterCache = new SnapshotCache(PROCESSOR, _snapshotDir);
+        Assert.assertEquals(laterCache.process(laterCache.process(_library), _page).toString(), expected);
+        Assert.assertEquals(laterCache.getHitCount(), 2);
+        Assert.assertEquals(laterCache.getMissCount(), 0);
+    }
+
+    public void testChangedInputIsParsedAgain() throws IOException {
+        SnapshotCache cache = new SnapshotCache(PROCESSOR, _snapshotDir);
+        cache.process(cache.process(_library), _page);
+
+        write("library.less", "@color: green;\n.mixin(@width: 1px) { border: @width solid @color; }\n");
+        String output = cache.process(cache.process(_library), _page).toString();
+
+        Assert.assertTrue(output.contains("color: green;"), output);
+        Assert.assertEquals(cache.getHitCount(), 0);
+        Assert.assertEquals(cache.getMissCount(), 4);
+    }
+
+    public void testChangedImportIsParsedAgain() throws IOException {
+        write("theme.less", "@color: red;\n.theme { color: @color; }\n");
+        File page = write("themed.less", "@import \"theme\";\n.page { color: @color; }\n");
+
+        SnapshotCache cache = new SnapshotCache(PROCESSOR, _snapshotDir);
+        Assert.assertTrue(cache.process(page).toString().contains("color: red;"));
+
+        // The import isn't part of the snapshot's name, so a later run finds the same snapshot
+        write("theme.less", "@color: green;\n.theme { color: @color; }\n");
+        SnapshotCache laterCache = new SnapshotCache(PROCESSOR, _snapshotDir);
+        String output = laterCache.process(page).toString();
+
+        Assert.assertTrue(output.contains("color: green;"), output);
+        Assert.assertFalse(output.contains("color: red;"), output);
+        Assert.assertEquals(laterCache.getHitCount(), 0);
+        Assert.assertEquals(laterCache.getMissCount(), 1);
+
+        // The replaced snapshot is used while the import stays the same
+        Assert.assertEquals(new SnapshotCache(PROCESSOR, _snapshotDir).process(page).toString(), output);
+    }
+
+    public void testIdenticalInputsInOtherDirectoriesAreNotShared() throws IOException {
+        write("red/colors.less", "@color: red;\n");
+        write("blue/colors.less", "@color: blue;\n");
+        File redPage = write("red/page.less", "@import \"colors\";\n.page { color: @color; }\n");
+        File bluePage = write("blue/page.less", "@import \"colors\";\n.page { color: @color; }\n");
+
+        SnapshotCache cache = new SnapshotCache(PROCESSOR, _snapshotDir);
+        Assert.assertTrue(cache.process(redPage).toString().contains("color: red;"));
+        String output = cache.process(bluePage).toString();
+
+        Assert.assertTrue(output.contains("color: blue;"), output);
+        Assert.assertEquals(cache.getHitCount(), 0);
+        Assert.assertEquals(cache.getMissCount(), 2);
+    }
+
+    public void testDamagedSnapshotIsReplaced() throws IOException {
+        SnapshotCache cache = new SnapshotCache(PROCESSOR, _snapshotDir);
+        String expected = cache.process(_library).toString();
+
+        File[] snapshots = _snapshotDir.listFiles();
+        Assert.assertEquals(snapshots.length, 1);
+        FileUtils.writeStringToFile(snapshots[0], "damaged", "UTF-8");
+
+        Assert.assertEquals(cache.process(_library).toString(), expected);
+        Assert.assertEquals(cache.process(_library).toString(), expected);
+        Assert.assertEquals(cache.getHitCount(), 1);
+        Assert.assertEquals(cache.getMissCount(), 2);
+    }
+
+    public void testSnapshotWithOversizedLengthsIsReplaced() throws IOException {
+        SnapshotCache cache = new SnapshotCache(PROCESSOR, _snapshotDir);
+        String expected = cache.process(_library).toString();
+        File snapshot = _snapshotDir.listFiles()[0];
+
+        // A scope with more children than the snapshot holds, and a string longer than the snapshot
+        int[][] nodes = {{15, 0}, {19, 0, 1}};
+        for (int[] node : nodes) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(0); // No imported files
+            output.writeInt(0x4a4c4e53);
+            output.writeInt(NodeSnapshots.FORMAT_VERSION);
+            for (int b : node) {
+                output.writeByte(b);
+            }
+            output.write(new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07});
+            FileUtils.writeByteArrayToFile(snapshot, bytes.toByteArray());
+
+            Assert.assertEquals(cache.process(_library).toString(), expected);
+        }
+        Assert.assertEquals(cache.getHitCount(), 0);
+        Assert.assertEquals(cache.getMissCount(), 3);
+    }
+
+    private File write(String fileName, String content) throws IOException {
+        File file = new File(_dir, fileName);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        return file;
+    }
+}
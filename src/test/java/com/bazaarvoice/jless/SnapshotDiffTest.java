@@ -0,0 +1,67 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import com.bazaarvoice.jless.ast.util.NodeSnapshots;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Translates each parsed input after writing it to a snapshot and reading it back.
+ */
+@Test
+public class SnapshotDiffTest extends DiffTest {
+
+    private static final LessProcessor PROCESSOR = TestUtils.addImportPaths(new LessProcessor.Builder())
+            .setTranslationEnabled(true)
+            .setCompressionEnabled(false)
+            .build();
+
+    @Override
+    protected LessProcessor getProcessor() {
+        return PROCESSOR;
+    }
+
+    @Override
+    protected LessProcessor.Result runProcessor(LessProcessor.Result parent, InputStream input) {
+        LessProcessor.Result parsed = super.runProcessor(parent, input);
+
+        try {
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            NodeSnapshots.write(parsed.getScope(), snapshot);
+            return PROCESSOR.createResult(parent, NodeSnapshots.read(new ByteArrayInputStream(snapshot.toByteArray())));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    protected String getGeneratedDirName() {
+        return "translated-snapshot";
+    }
+
+    @Override
+    protected String getExpectedDirName() {
+        return "translated";
+    }
+}
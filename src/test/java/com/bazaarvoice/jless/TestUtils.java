@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.net.URISyntaxException;
 
 public final class TestUtils {
 
@@ -50,6 +51,18 @@ public final class TestUtils {
         _sLogStream.flush();
     }
 
+    /**
+     * Adds the directories that the import tests search for imported files.
+     */
+    public static LessProcessor.Builder addImportPaths(LessProcessor.Builder builder) {
+        try {
+            File lessDirectory = new File(TestUtils.class.getResource("/less").toURI());
+            return builder.addImportPath(lessDirectory).addImportPath(new File(lessDirectory, "extra_import_path"));
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Utility method that can be run from within the debugger to look at the parsed output file.
      */
@@ -23,10 +23,14 @@ import org.testng.annotations.Test;
 @Test
 public class TranslatedDiffTest extends DiffTest {
 
+    private static final LessProcessor PROCESSOR = TestUtils.addImportPaths(new LessProcessor.Builder())
+            .setTranslationEnabled(true)
+            .setCompressionEnabled(false)
+            .build();
+
     @Override
-    protected void setProcessorOptions() {
-        PROCESSOR.setTranslationEnabled(true);
-        PROCESSOR.setCompressionEnabled(false);
+    protected LessProcessor getProcessor() {
+        return PROCESSOR;
     }
 
     @Override
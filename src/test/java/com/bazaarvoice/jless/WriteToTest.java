@@ -0,0 +1,86 @@
+/**
+ * Copyright 2010 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author J. Ryan Stinnett (ryan.stinnett@bazaarvoice.com)
+ */
+
+package com.bazaarvoice.jless;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+@Test
+public class WriteToTest {
+
+    // Enough copies of the input for the output to span many printer chunks
+    private static final int INPUT_COPIES = 50;
+
+    public void testTranslatedOutput() throws IOException {
+        compareOutput(new LessProcessor.Builder().build(), "nested");
+    }
+
+    public void testCompressedOutput() throws IOException {
+        compareOutput(new LessProcessor.Builder().setCompressionEnabled(true).build(), "rulesets");
+    }
+
+    public void testParsedOutput() throws IOException {
+        compareOutput(new LessProcessor.Builder().setTranslationEnabled(false).build(), "css");
+    }
+
+    /**
+     * A single value longer than a printer chunk is written in several pieces.
+     */
+    public void testValueLongerThanChunkIsWrittenWhole() throws IOException {
+        StringBuilder sb = new StringBuilder(".long { content: \"");
+        for (int i = 0; i < 3000; i++) {
+            sb.append("chunk").append(i % 10);
+        }
+        sb.append("\"; }\n");
+
+        compareOutput(new LessProcessor.Builder().build(), sb.toString().getBytes("UTF-8"));
+    }
+
+    private void compareOutput(LessProcessor processor, String fileName) throws IOException {
+        compareOutput(processor, assembleInput(fileName));
+    }
+
+    private void compareOutput(LessProcessor processor, byte[] input) throws IOException {
+
+        String expected = processor.process(new ByteArrayInputStream(input)).toString();
+
+        StringWriter writer = new StringWriter();
+        processor.process(new ByteArrayInputStream(input)).writeTo(writer);
+        Assert.assertEquals(writer.toString(), expected);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        processor.process(new ByteArrayInputStream(input)).writeTo(stream);
+        Assert.assertEquals(stream.toString("UTF-8"), expected);
+    }
+
+    private byte[] assembleInput(String fileName) throws IOException {
+        String text = IOUtils.toString(getClass().getResourceAsStream("/less/" + fileName + ".less"), "UTF-8");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < INPUT_COPIES; i++) {
+            sb.append(text).append('\n');
+        }
+        return sb.toString().getBytes("UTF-8");
+    }
+}